@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.Collector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.cloudera.hive.udf.functions.ParseKeyValueTuple;
+
+/**
+ * Measures the per-row cost of parse_key_val_tuple.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseKeyValueTupleBenchmark {
+
+	static final int ROWS = 1024;
+
+	/** Number of key value pairs in each input string. */
+	@Param({"10", "150"})
+	public int pairs;
+
+	/** Number of key names asked for, capped at the number of pairs. */
+	@Param({"4", "150"})
+	public int keys;
+
+	@Param({"8", "64"})
+	public int stringLength;
+
+	/** Number of distinct input strings the rows cycle through. */
+	@Param({"1", "1024"})
+	public int distinctInputs;
+
+	/** Whether the delimiters and key names are passed as constants, like literals in a query. */
+	@Param({"true", "false"})
+	public boolean constantArgs;
+
+	private ParseKeyValueTuple udtf;
+	private Object[][] rows;
+	private int forwarded;
+
+	@Setup
+	public void setUp() throws Exception {
+		int keyCount = Math.min(keys, pairs);
+		Text[] keyNames = new Text[keyCount];
+		for (int k = 0; k < keyCount; k++) {
+			// Spread the requested keys over the whole string
+			keyNames[k] = new Text(SyntheticData.keyName((int) ((long) k * pairs / keyCount)));
+		}
+		ObjectInspector[] ois = new ObjectInspector[3 + keyCount];
+		Arrays.fill(ois, PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+		if (constantArgs) {
+			ois[1] = constant(new Text("&"));
+			ois[2] = constant(new Text("="));
+			for (int k = 0; k < keyCount; k++) {
+				ois[3 + k] = constant(keyNames[k]);
+			}
+		}
+		udtf = new ParseKeyValueTuple();
+		udtf.initialize(ois);
+		udtf.setCollector(new Collector() {
+			@Override
+			public void collect(Object input) throws HiveException {
+				forwarded++;
+			}
+		});
+
+		SyntheticData data = new SyntheticData(42);
+		Text[] inputs = new Text[Math.max(1, Math.min(distinctInputs, ROWS))];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = data.keyValueString(pairs, stringLength, "&", "=");
+		}
+		rows = new Object[ROWS][];
+		for (int i = 0; i < ROWS; i++) {
+			Object[] row = new Object[3 + keyCount];
+			row[0] = inputs[i % inputs.length];
+			row[1] = new Text("&");
+			row[2] = new Text("=");
+			for (int k = 0; k < keyCount; k++) {
+				row[3 + k] = keyNames[k];
+			}
+			rows[i] = row;
+		}
+	}
+
+	private static ObjectInspector constant(Text value) {
+		return PrimitiveObjectInspectorFactory.getPrimitiveWritableConstantObjectInspector(PrimitiveCategory.STRING, value);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void process(Blackhole blackhole) throws HiveException {
+		for (Object[] row : rows) {
+			udtf.process(row);
+		}
+		blackhole.consume(forwarded);
+	}
+
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator.AggregationBuffer;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+import org.apache.hadoop.io.IntWritable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.cloudera.hive.udf.examples.Sum;
+
+/**
+ * Measures the per-row cost of the example Sum UDAF evaluator, and of the generic sum's long evaluator on the
+ * map side.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class SumBenchmark {
+
+	static final int ROWS = 8192;
+
+	/** Number of groups, each with its own aggregation buffer. */
+	@Param({"1", "1024"})
+	public int groups;
+
+	private Sum.SumIntUDAFEvaluator[] evaluators;
+	private int[] values;
+
+	private GenericUDAFEvaluator generic;
+	private AggregationBuffer[] buffers;
+	private Object[][] arguments;
+
+	@Setup
+	public void setUp() throws Exception {
+		evaluators = new Sum.SumIntUDAFEvaluator[groups];
+		for (int i = 0; i < groups; i++) {
+			evaluators[i] = new Sum.SumIntUDAFEvaluator();
+		}
+		values = new SyntheticData(42).ints(ROWS);
+
+		generic = new com.cloudera.hive.udf.functions.Sum().getEvaluator(new TypeInfo[] {TypeInfoFactory.intTypeInfo});
+		generic.init(GenericUDAFEvaluator.Mode.PARTIAL1, new ObjectInspector[] {PrimitiveObjectInspectorFactory.writableIntObjectInspector});
+		buffers = new AggregationBuffer[groups];
+		for (int i = 0; i < groups; i++) {
+			buffers[i] = generic.getNewAggregationBuffer();
+		}
+		arguments = new Object[ROWS][];
+		for (int i = 0; i < ROWS; i++) {
+			arguments[i] = new Object[] {new IntWritable(values[i])};
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void iterate(Blackhole blackhole) {
+		for (Sum.SumIntUDAFEvaluator evaluator : evaluators) {
+			evaluator.init();
+		}
+		for (int i = 0; i < values.length; i++) {
+			evaluators[i % evaluators.length].iterate(values[i]);
+		}
+		for (Sum.SumIntUDAFEvaluator evaluator : evaluators) {
+			blackhole.consume(evaluator.terminate());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void iterateGeneric(Blackhole blackhole) throws HiveException {
+		for (AggregationBuffer buffer : buffers) {
+			generic.reset(buffer);
+		}
+		for (int i = 0; i < arguments.length; i++) {
+			generic.iterate(buffers[i % buffers.length], arguments[i]);
+		}
+		for (AggregationBuffer buffer : buffers) {
+			blackhole.consume(generic.terminatePartial(buffer));
+		}
+	}
+
+}
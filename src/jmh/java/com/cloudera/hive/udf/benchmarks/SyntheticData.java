@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.benchmarks;
+
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Generates repeatable synthetic input for the benchmarks.
+ */
+public class SyntheticData {
+
+	private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789".toCharArray();
+
+	private final Random random;
+
+	public SyntheticData(long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @param length - the length of the string
+	 * @return a random alphanumeric string
+	 */
+	public String randomString(int length) {
+		char[] chars = new char[length];
+		for (int i = 0; i < length; i++) {
+			chars[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Builds rows for the window functions, already distributed and sorted the way the README's inner query
+	 * would leave them. Column 0 is the value, columns 1 to keyWidth are the partition columns.
+	 *
+	 * @param rows - the number of rows
+	 * @param partitions - the number of distinct partitions, each a contiguous run of rows
+	 * @param keyWidth - the number of partition columns
+	 * @param tieRatio - the probability that a row has the same value as the row before it
+	 * @param stringLength - the length of each partition column value
+	 * @return the rows
+	 */
+	public Text[][] windowRows(int rows, int partitions, int keyWidth, double tieRatio, int stringLength) {
+		partitions = Math.max(1, Math.min(partitions, rows));
+		Text[][] keys = new Text[partitions][keyWidth];
+		for (int p = 0; p < partitions; p++) {
+			for (int k = 0; k < keyWidth; k++) {
+				keys[p][k] = new Text(randomString(stringLength));
+			}
+		}
+		Text[][] result = new Text[rows][];
+		int previousPartition = -1;
+		long value = 0;
+		for (int i = 0; i < rows; i++) {
+			int partition = (int) ((long) i * partitions / rows);
+			if (partition != previousPartition) {
+				value = 0;
+				previousPartition = partition;
+			} else if (random.nextDouble() >= tieRatio) {
+				value++;
+			}
+			Text[] row = new Text[keyWidth + 1];
+			row[0] = new Text(Long.toString(value));
+			for (int k = 0; k < keyWidth; k++) {
+				row[k + 1] = keys[partition][k];
+			}
+			result[i] = row;
+		}
+		return result;
+	}
+
+	/**
+	 * @param index - the index of the key
+	 * @return the name of the index'th key used by {@link #keyValueString(int, int, String, String)}
+	 */
+	public static String keyName(int index) {
+		return "key" + index;
+	}
+
+	/**
+	 * Builds a delimited key value string such as a URL query string.
+	 *
+	 * @param pairs - the number of key value pairs
+	 * @param valueLength - the length of each value
+	 * @param fieldDelimiter - separator between the pairs
+	 * @param keyValSeparator - separator between each key and value
+	 * @return the string
+	 */
+	public Text keyValueString(int pairs, int valueLength, String fieldDelimiter, String keyValSeparator) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < pairs; i++) {
+			if (i > 0) {
+				builder.append(fieldDelimiter);
+			}
+			builder.append(keyName(i)).append(keyValSeparator).append(randomString(valueLength));
+		}
+		return new Text(builder.toString());
+	}
+
+	/**
+	 * @param count - the number of values
+	 * @return random ints
+	 */
+	public int[] ints(int count) {
+		int[] result = new int[count];
+		for (int i = 0; i < count; i++) {
+			result[i] = random.nextInt(1000);
+		}
+		return result;
+	}
+
+}
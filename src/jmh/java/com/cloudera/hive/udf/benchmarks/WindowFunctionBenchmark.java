@@ -0,0 +1,101 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.benchmarks;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredJavaObject;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the per-row cost of the stateful window UDFs over a pre-sorted stream of rows.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class WindowFunctionBenchmark {
+
+	static final int ROWS = 8192;
+
+	@Param({"RowNumber", "Rank", "DenseRank", "FirstValue"})
+	public String function;
+
+	@Param({"16", "1024"})
+	public int partitions;
+
+	@Param({"1", "5"})
+	public int keyWidth;
+
+	@Param({"0.0", "0.5"})
+	public double tieRatio;
+
+	@Param({"8", "32"})
+	public int stringLength;
+
+	private GenericUDF udf;
+	private DeferredObject[][] rows;
+
+	@Setup
+	public void setUp() throws Exception {
+		udf = (GenericUDF) Class.forName("com.cloudera.hive.udf.functions." + function).newInstance();
+		ObjectInspector[] ois = new ObjectInspector[keyWidth + 1];
+		Arrays.fill(ois, PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+		udf.initialize(ois);
+
+		Text[][] data = new SyntheticData(42).windowRows(ROWS, partitions, keyWidth, tieRatio, stringLength);
+		rows = new DeferredObject[ROWS][];
+		for (int i = 0; i < ROWS; i++) {
+			rows[i] = new DeferredObject[data[i].length];
+			for (int j = 0; j < data[i].length; j++) {
+				rows[i][j] = new DeferredJavaObject(data[i][j]);
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void evaluate(Blackhole blackhole) throws HiveException {
+		for (DeferredObject[] row : rows) {
+			blackhole.consume(udf.evaluate(row));
+		}
+	}
+
+}
@@ -22,6 +22,10 @@ import org.apache.hadoop.hive.ql.exec.UDAF;
 import org.apache.hadoop.hive.ql.exec.UDAFEvaluator;
 import org.apache.hadoop.hive.ql.udf.UDFType;
 
+/**
+ * An example of the reflective UDAF API. It only sums ints, and overflows silently; for real queries use
+ * {@link com.cloudera.hive.udf.functions.Sum}.
+ */
 @UDFType()
 public class Sum extends UDAF {
 
@@ -0,0 +1,277 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * This UDAF estimates quantiles of a numeric column from a {@link TDigest}, in a single map-side aggregated pass.
+ * <p>
+ * Each group keeps a digest of bounded size whatever the number of values. The quantiles are a constant double, or
+ * a constant array of doubles for several quantiles at once; the optional compression, 200 by default, trades size
+ * for accuracy.
+ * <p>
+ * The partial result is a struct of the quantiles and the serialized digest.
+ */
+@Description(name = "approx_quantile", value = "_FUNC_(value, quantile or array of quantiles, optional compression) - Returns the estimated quantiles of the group's values.")
+public class ApproxQuantile extends AbstractGenericUDAFResolver {
+
+	@Override
+	public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters) throws SemanticException {
+		if (parameters.length < 2 || parameters.length > 3) {
+			throw new UDFArgumentLengthException("approx_quantile takes a value, the quantiles and an optional compression");
+		}
+		if (!isNumeric(parameters[0])) {
+			throw new UDFArgumentTypeException(0, "Only numeric values are accepted, but " + parameters[0].getTypeName() + " was passed");
+		}
+		boolean multiple = parameters[1].getCategory() == ObjectInspector.Category.LIST;
+		TypeInfo quantile = multiple ? ((ListTypeInfo) parameters[1]).getListElementTypeInfo() : parameters[1];
+		if (!isNumeric(quantile)) {
+			throw new UDFArgumentTypeException(1, "The quantiles must be a double or an array of doubles, but " + parameters[1].getTypeName() + " was passed");
+		}
+		if (parameters.length == 3 && !isNumeric(parameters[2])) {
+			throw new UDFArgumentTypeException(2, "The compression must be numeric, but " + parameters[2].getTypeName() + " was passed");
+		}
+		return new ApproxQuantileEvaluator(multiple);
+	}
+
+	private static boolean isNumeric(TypeInfo type) {
+		if (type.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			return false;
+		}
+		switch (((PrimitiveTypeInfo) type).getPrimitiveCategory()) {
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+		case FLOAT:
+		case DOUBLE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Keeps a digest of each group's values.
+	 */
+	public static class ApproxQuantileEvaluator extends GenericUDAFEvaluator {
+
+		private final boolean multiple;
+
+		// For PARTIAL1 and COMPLETE: the original arguments
+		private PrimitiveObjectInspector valueOI;
+		private ObjectInspector quantilesOI;
+		private PrimitiveObjectInspector compressionOI;
+
+		// For PARTIAL2 and FINAL: the partial struct
+		private StructObjectInspector partialOI;
+		private StructField quantilesField;
+		private StructField digestField;
+		private BinaryObjectInspector digestOI;
+
+		private double[] quantiles;	// Read from the first row, or the first partial
+		private final TDigest.Scratch scratch = new TDigest.Scratch();	// Shared by the digests of every group
+		private final BytesWritable digest = new BytesWritable();
+		private final Object[] partial = new Object[2];
+		private final DoubleWritable single = new DoubleWritable();
+
+		public ApproxQuantileEvaluator(boolean multiple) {
+			this.multiple = multiple;
+		}
+
+		@Override
+		public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+			super.init(m, parameters);
+			if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+				valueOI = (PrimitiveObjectInspector) parameters[0];
+				quantilesOI = parameters[1];
+				compressionOI = parameters.length > 2 ? (PrimitiveObjectInspector) parameters[2] : null;
+			} else {
+				partialOI = (StructObjectInspector) parameters[0];
+				quantilesField = partialOI.getStructFieldRef("quantiles");
+				digestField = partialOI.getStructFieldRef("digest");
+				quantilesOI = quantilesField.getFieldObjectInspector();
+				digestOI = (BinaryObjectInspector) digestField.getFieldObjectInspector();
+			}
+			if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2) {
+				List<String> names = new ArrayList<String>(2);
+				List<ObjectInspector> ois = new ArrayList<ObjectInspector>(2);
+				names.add("quantiles");
+				ois.add(ObjectInspectorFactory.getStandardListObjectInspector(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector));
+				names.add("digest");
+				ois.add(PrimitiveObjectInspectorFactory.writableBinaryObjectInspector);
+				return ObjectInspectorFactory.getStandardStructObjectInspector(names, ois);
+			}
+			if (multiple) {
+				return ObjectInspectorFactory.getStandardListObjectInspector(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+			}
+			return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+		}
+
+		static class DigestBuffer implements AggregationBuffer {
+			TDigest digest;	// Created by the first value, once the compression is known
+		}
+
+		@Override
+		public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+			return new DigestBuffer();
+		}
+
+		@Override
+		public void reset(AggregationBuffer agg) throws HiveException {
+			DigestBuffer buffer = (DigestBuffer) agg;
+			if (buffer.digest != null) {
+				buffer.digest.clear();
+			}
+		}
+
+		@Override
+		public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+			if (quantiles == null) {
+				readQuantiles(parameters[1], quantilesOI);
+			}
+			if (parameters[0] == null) {
+				return;
+			}
+			DigestBuffer buffer = (DigestBuffer) agg;
+			if (buffer.digest == null) {
+				buffer.digest = new TDigest(readCompression(parameters), scratch);
+			}
+			buffer.digest.add(PrimitiveObjectInspectorUtils.getDouble(parameters[0], valueOI));
+		}
+
+		private double readCompression(Object[] parameters) throws HiveException {
+			if (compressionOI == null) {
+				return TDigest.DEFAULT_COMPRESSION;
+			}
+			if (parameters[2] == null) {
+				throw new HiveException("The compression must not be null");
+			}
+			double compression = PrimitiveObjectInspectorUtils.getDouble(parameters[2], compressionOI);
+			if (compression < TDigest.MIN_COMPRESSION || compression > TDigest.MAX_COMPRESSION) {
+				throw new HiveException("The compression must be from " + TDigest.MIN_COMPRESSION + " to "
+						+ TDigest.MAX_COMPRESSION + ", but was " + compression);
+			}
+			return compression;
+		}
+
+		/**
+		 * Reads the quantiles, which have to be the same for every row: a single number, or a list of them.
+		 */
+		private void readQuantiles(Object value, ObjectInspector oi) throws HiveException {
+			if (value == null) {
+				throw new HiveException("The quantiles must not be null");
+			}
+			if (oi.getCategory() == ObjectInspector.Category.LIST) {
+				ListObjectInspector listOI = (ListObjectInspector) oi;
+				PrimitiveObjectInspector elementOI = (PrimitiveObjectInspector) listOI.getListElementObjectInspector();
+				quantiles = new double[listOI.getListLength(value)];
+				for (int i = 0; i < quantiles.length; i++) {
+					Object element = listOI.getListElement(value, i);
+					if (element == null) {
+						throw new HiveException("The quantiles must not be null");
+					}
+					quantiles[i] = PrimitiveObjectInspectorUtils.getDouble(element, elementOI);
+				}
+			} else {
+				quantiles = new double[] {PrimitiveObjectInspectorUtils.getDouble(value, (PrimitiveObjectInspector) oi)};
+			}
+			for (double q : quantiles) {
+				if (!(q >= 0 && q <= 1)) {
+					quantiles = null;
+					throw new HiveException("The quantiles must be from 0 to 1, but " + q + " was passed");
+				}
+			}
+		}
+
+		@Override
+		public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+			DigestBuffer buffer = (DigestBuffer) agg;
+			if (buffer.digest == null || quantiles == null) {
+				return null;
+			}
+			List<DoubleWritable> q = new ArrayList<DoubleWritable>(quantiles.length);
+			for (double quantile : quantiles) {
+				q.add(new DoubleWritable(quantile));
+			}
+			buffer.digest.serialize(digest);
+			partial[0] = q;
+			partial[1] = digest;
+			return partial;
+		}
+
+		@Override
+		public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+			if (partial == null) {
+				return;
+			}
+			if (quantiles == null) {
+				readQuantiles(partialOI.getStructFieldData(partial, quantilesField), quantilesOI);
+			}
+			DigestBuffer buffer = (DigestBuffer) agg;
+			BytesWritable bytes = digestOI.getPrimitiveWritableObject(partialOI.getStructFieldData(partial, digestField));
+			if (buffer.digest == null) {
+				buffer.digest = new TDigest(TDigest.readCompression(bytes.getBytes(), 0, bytes.getLength()), scratch);
+			}
+			buffer.digest.merge(bytes.getBytes(), 0, bytes.getLength());
+		}
+
+		@Override
+		public Object terminate(AggregationBuffer agg) throws HiveException {
+			DigestBuffer buffer = (DigestBuffer) agg;
+			if (buffer.digest == null || buffer.digest.size() == 0) {
+				return null;
+			}
+			if (!multiple) {
+				single.set(buffer.digest.quantile(quantiles[0]));
+				return single;
+			}
+			List<DoubleWritable> result = new ArrayList<DoubleWritable>(quantiles.length);
+			for (double quantile : quantiles) {
+				result.add(new DoubleWritable(buffer.digest.quantile(quantile)));
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.binarysortable.BinarySortableSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * A {@link GroupKey} that serializes the key columns of each row into a binary-sortable encoding.
+ * <p>
+ * Two rows belong to the same group exactly when their encodings are byte for byte equal, so detecting a
+ * change is a single memcmp against the bytes of the previous key. The serializer reuses its output
+ * buffer and the previous key is copied into a buffer that only grows, so no objects are created per row.
+ */
+class BinaryGroupKey extends GroupKey {
+
+	private final BinarySortableSerDe serde;
+	private final StructObjectInspector rowOI;
+	private final int first;
+	private final Object[] row;
+	private byte[] previous = new byte[64];
+	private int previousLength;
+	private boolean empty = true;
+
+	/**
+	 * @param ois - the ObjectInspectors of all of the UDF arguments
+	 * @param first - the index of the first argument that makes up the key
+	 * @param last - the index after the last argument that makes up the key
+	 * @throws UDFArgumentException when the key columns cannot be serialized
+	 */
+	BinaryGroupKey(ObjectInspector[] ois, int first, int last) throws UDFArgumentException {
+		this.first = first;
+		this.row = new Object[last - first];
+		this.rowOI = rowInspector(ois, first, last);
+		this.serde = createSerDe(ois, first, last);
+	}
+
+	/**
+	 * @return a StructObjectInspector over an Object[] holding the given columns
+	 */
+	static StructObjectInspector rowInspector(ObjectInspector[] ois, int first, int last) {
+		int width = last - first;
+		List<String> names = new ArrayList<String>(width);
+		List<ObjectInspector> fieldOIs = new ArrayList<ObjectInspector>(width);
+		for (int index = 0; index < width; index++) {
+			names.add("_col" + index);
+			fieldOIs.add(ois[first + index]);
+		}
+		return ObjectInspectorFactory.getStandardStructObjectInspector(names, fieldOIs);
+	}
+
+	/**
+	 * @return a BinarySortableSerDe for rows made up of the given columns
+	 * @throws UDFArgumentException when the columns cannot be serialized
+	 */
+	static BinarySortableSerDe createSerDe(ObjectInspector[] ois, int first, int last) throws UDFArgumentException {
+		StringBuilder columns = new StringBuilder();
+		StringBuilder types = new StringBuilder();
+		for (int index = first; index < last; index++) {
+			if (index > first) {
+				columns.append(',');
+				types.append(',');
+			}
+			columns.append("_col").append(index - first);
+			types.append(ois[index].getTypeName());
+		}
+		Properties properties = new Properties();
+		properties.setProperty(Constants.LIST_COLUMNS, columns.toString());
+		properties.setProperty(Constants.LIST_COLUMN_TYPES, types.toString());
+		BinarySortableSerDe serde = new BinarySortableSerDe();
+		try {
+			serde.initialize(new Configuration(), properties);
+		} catch (SerDeException e) {
+			throw new UDFArgumentException(e);
+		}
+		return serde;
+	}
+
+	@Override
+	boolean update(DeferredObject[] arguments) throws HiveException {
+		for (int index = 0; index < row.length; index++) {
+			row[index] = arguments[first + index].get();
+		}
+		return updateFromRow();
+	}
+
+	@Override
+	boolean update(Object[] arguments) throws HiveException {
+		for (int index = 0; index < row.length; index++) {
+			row[index] = arguments[first + index];
+		}
+		return updateFromRow();
+	}
+
+	private boolean updateFromRow() throws HiveException {
+		BytesWritable current;
+		try {
+			current = (BytesWritable) serde.serialize(row, rowOI);
+		} catch (SerDeException e) {
+			throw new HiveException(e);
+		}
+		byte[] bytes = current.getBytes();
+		int length = current.getLength();
+		if (!empty && WritableComparator.compareBytes(bytes, 0, length, previous, 0, previousLength) == 0) {
+			return false;
+		}
+		if (previous.length < length) {
+			previous = new byte[Math.max(length, previous.length * 2)];
+		}
+		System.arraycopy(bytes, 0, previous, 0, length);
+		previousLength = length;
+		empty = false;
+		return true;
+	}
+
+	@Override
+	void reset() {
+		previousLength = 0;
+		empty = true;
+	}
+
+}
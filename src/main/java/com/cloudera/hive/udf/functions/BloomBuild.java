@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * This UDAF builds a {@link BloomFilter} of the values of a column, to be tested with {@link BloomContains}.
+ * <p>
+ * The filter is sized up front from the expected number of values and the false positive probability, 0.01 by
+ * default, both constants, so every partial has the same dimensions and partials are merged with a bitwise or.
+ * The aggregation buffer is the bitset itself, and the partial result is the serialized filter.
+ */
+@Description(name = "bloom_build", value = "_FUNC_(value, expected number of values, optional false positive probability) - Returns a Bloom filter of the values of the group, as a binary.")
+public class BloomBuild extends AbstractGenericUDAFResolver {
+
+	@Override
+	public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters) throws SemanticException {
+		if (parameters.length < 2 || parameters.length > 3) {
+			throw new UDFArgumentLengthException("bloom_build takes a value, the expected number of values and an optional false positive probability");
+		}
+		if (parameters[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			throw new UDFArgumentTypeException(0, "Only primitive values can be added to a filter, but " + parameters[0].getTypeName() + " was passed");
+		}
+		HllSketch.checkIntegral(parameters[1], 1, "The expected number of values");
+		if (parameters.length == 3) {
+			if (parameters[2].getCategory() != ObjectInspector.Category.PRIMITIVE
+					|| (((PrimitiveTypeInfo) parameters[2]).getPrimitiveCategory() != PrimitiveObjectInspector.PrimitiveCategory.DOUBLE
+					&& ((PrimitiveTypeInfo) parameters[2]).getPrimitiveCategory() != PrimitiveObjectInspector.PrimitiveCategory.FLOAT)) {
+				throw new UDFArgumentTypeException(2, "The false positive probability must be a double, but " + parameters[2].getTypeName() + " was passed");
+			}
+		}
+		return new BloomBuildEvaluator();
+	}
+
+	/**
+	 * Adds values, or merges filters, into a filter for each group.
+	 */
+	public static class BloomBuildEvaluator extends GenericUDAFEvaluator {
+
+		// For PARTIAL1 and COMPLETE: the original arguments
+		private ValueHasher hasher;
+		private PrimitiveObjectInspector expectedOI;
+		private PrimitiveObjectInspector fppOI;
+
+		// For PARTIAL2 and FINAL: the serialized filters
+		private BinaryObjectInspector filterOI;
+
+		private final BytesWritable result = new BytesWritable();
+
+		@Override
+		public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+			super.init(m, parameters);
+			if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+				hasher = new ValueHasher(parameters[0], "bloom_build");
+				expectedOI = (PrimitiveObjectInspector) parameters[1];
+				fppOI = parameters.length > 2 ? (PrimitiveObjectInspector) parameters[2] : null;
+			} else {
+				filterOI = (BinaryObjectInspector) parameters[0];
+			}
+			return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+		}
+
+		static class BloomBuffer implements AggregationBuffer {
+			BloomFilter filter;	// Created by the first value, once the size is known
+		}
+
+		@Override
+		public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+			return new BloomBuffer();
+		}
+
+		@Override
+		public void reset(AggregationBuffer agg) throws HiveException {
+			BloomBuffer buffer = (BloomBuffer) agg;
+			if (buffer.filter != null) {
+				buffer.filter.clear();
+			}
+		}
+
+		@Override
+		public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+			if (parameters[0] == null) {
+				return;
+			}
+			BloomBuffer buffer = (BloomBuffer) agg;
+			if (buffer.filter == null) {
+				buffer.filter = createFilter(parameters);
+			}
+			buffer.filter.add(hasher.hash(parameters[0]));
+		}
+
+		private BloomFilter createFilter(Object[] parameters) throws HiveException {
+			if (parameters[1] == null) {
+				throw new HiveException("The expected number of values must not be null");
+			}
+			long expected = PrimitiveObjectInspectorUtils.getLong(parameters[1], expectedOI);
+			if (expected < 1) {
+				throw new HiveException("The expected number of values must be positive, but was " + expected);
+			}
+			double fpp = BloomFilter.DEFAULT_FPP;
+			if (fppOI != null) {
+				if (parameters[2] == null) {
+					throw new HiveException("The false positive probability must not be null");
+				}
+				fpp = PrimitiveObjectInspectorUtils.getDouble(parameters[2], fppOI);
+				if (!(fpp > 0 && fpp < 1)) {
+					throw new HiveException("The false positive probability must be between 0 and 1, but was " + fpp);
+				}
+			}
+			return BloomFilter.create(expected, fpp);
+		}
+
+		@Override
+		public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+			return terminate(agg);
+		}
+
+		@Override
+		public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+			if (partial == null) {
+				return;
+			}
+			BloomBuffer buffer = (BloomBuffer) agg;
+			BytesWritable bytes = filterOI.getPrimitiveWritableObject(partial);
+			if (buffer.filter == null) {
+				BloomFilter.checkHeader(bytes.getBytes(), 0, bytes.getLength());
+				buffer.filter = new BloomFilter(BloomFilter.readHashes(bytes.getBytes(), 0), BloomFilter.readWords(bytes.getBytes(), 0));
+			}
+			buffer.filter.merge(bytes.getBytes(), 0, bytes.getLength());
+		}
+
+		@Override
+		public Object terminate(AggregationBuffer agg) throws HiveException {
+			BloomBuffer buffer = (BloomBuffer) agg;
+			if (buffer.filter == null) {
+				return null;
+			}
+			buffer.filter.serialize(result);
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * This UDF tests whether a value may be in a {@link BloomBuild} filter: false means it certainly is not, and true
+ * that it probably is. Values are hashed by {@link ValueHasher}, so strings are hashed from the bytes of their
+ * writables, and an int matches a bigint of the same value.
+ * <p>
+ * The filter, typically the single row of a map-joined bloom_build(), is tested in place in the bytes of its
+ * writable, so it is never copied or deserialized. Its header is only checked when a different filter arrives, that
+ * is a different byte array or length from the previous row's, so a row normally costs just the hash and the probes
+ * and creates no objects.
+ * <p>
+ * The result is null if the filter is null, and false if the value is null.
+ */
+@Description(name = "bloom_contains", value = "_FUNC_(filter, value) - Returns false if the value is not in the Bloom filter, and true if it probably is.")
+public class BloomContains extends GenericUDF {
+
+	private BinaryObjectInspector filterOI;
+	private ValueHasher hasher;
+	// The last filter that was checked, and its dimensions
+	private byte[] checkedBytes;
+	private int checkedLength;
+	private int hashes;
+	private int words;
+	private final BooleanWritable result = new BooleanWritable();
+
+	@Override
+	public ObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {
+		if (arguments.length != 2) {
+			throw new UDFArgumentLengthException("bloom_contains takes a filter and a value");
+		}
+		if (!"binary".equals(arguments[0].getTypeName())) {
+			throw new UDFArgumentException("A filter must be a binary, but " + arguments[0].getTypeName() + " was passed");
+		}
+		filterOI = (BinaryObjectInspector) arguments[0];
+		hasher = new ValueHasher(arguments[1], "bloom_contains");
+		checkedBytes = null;
+		return PrimitiveObjectInspectorFactory.writableBooleanObjectInspector;
+	}
+
+	@Override
+	public Object evaluate(DeferredObject[] arguments) throws HiveException {
+		Object filter = arguments[0].get();
+		if (filter == null) {
+			return null;
+		}
+		Object value = arguments[1].get();
+		if (value == null) {
+			result.set(false);
+			return result;
+		}
+		BytesWritable bytes = filterOI.getPrimitiveWritableObject(filter);
+		if (bytes.getBytes() != checkedBytes || bytes.getLength() != checkedLength) {
+			BloomFilter.checkHeader(bytes.getBytes(), 0, bytes.getLength());
+			checkedBytes = bytes.getBytes();
+			checkedLength = bytes.getLength();
+			hashes = BloomFilter.readHashes(checkedBytes, 0);
+			words = BloomFilter.readWords(checkedBytes, 0);
+		}
+		// The dimensions checked against this length keep every probe in bounds, even if the bytes were reused
+		result.set(BloomFilter.mightContain(checkedBytes, 0, hashes, words, hasher.hash(value)));
+		return result;
+	}
+
+	@Override
+	public String getDisplayString(String[] children) {
+		return "bloom_contains(" + children[0] + ", " + children[1] + ")";
+	}
+
+}
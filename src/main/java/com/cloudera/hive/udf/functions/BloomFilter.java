@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * A Bloom filter: a bitset of a multiple of 64 bits, with a fixed number of bits set for each item.
+ * <p>
+ * The bits are sized from the expected number of items and the false positive probability wanted, and the bit
+ * indices come from one 64 bit hash, split into two 32 bit halves and combined as h1 + i * h2. Filters of the same
+ * dimensions are merged by a bitwise or.
+ * <p>
+ * The serialized form is the number of hashes and the number of words, followed by the words in little-endian
+ * order, so that bit b of the filter is bit b % 8 of byte b / 8 of the words. That lets
+ * {@link #mightContain(byte[], int, int, int, long)} test a serialized filter in place.
+ */
+class BloomFilter {
+
+	static final double DEFAULT_FPP = 0.01;
+	static final int MAX_HASHES = 30;
+	static final int MAX_WORDS = 1 << 23;	// 64 MB
+	static final int HEADER = 8;
+
+	private final int hashes;
+	private final long[] words;
+	private final long bits;
+
+	BloomFilter(int hashes, int words) {
+		this.hashes = hashes;
+		this.words = new long[words];
+		this.bits = 64L * words;
+	}
+
+	/**
+	 * Sizes a filter for a number of items and a false positive probability.
+	 *
+	 * @throws HiveException if the filter would be larger than {@link #MAX_WORDS}
+	 */
+	static BloomFilter create(long expected, double fpp) throws HiveException {
+		double bits = Math.ceil(-Math.max(expected, 1) * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+		if (bits > 64.0 * MAX_WORDS) {
+			throw new HiveException("A Bloom filter for " + expected + " items with a false positive probability of "
+					+ fpp + " would take more than " + (MAX_WORDS / (1 << 17)) + " MB");
+		}
+		int words = (int) Math.max(1, Math.ceil(bits / 64));
+		int hashes = (int) Math.round(64.0 * words / Math.max(expected, 1) * Math.log(2));
+		return new BloomFilter(Math.max(1, Math.min(MAX_HASHES, hashes)), words);
+	}
+
+	int getHashes() {
+		return hashes;
+	}
+
+	int getWords() {
+		return words.length;
+	}
+
+	void clear() {
+		Arrays.fill(words, 0);
+	}
+
+	void add(long hash) {
+		long h1 = (int) hash;
+		long h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+			words[(int) (bit >>> 6)] |= 1L << bit;
+		}
+	}
+
+	/**
+	 * @return false if the item was never added, true if it probably was
+	 */
+	boolean mightContain(long hash) {
+		long h1 = (int) hash;
+		long h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+			if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Tests a serialized filter in place, without deserializing it.
+	 *
+	 * @param bytes - a serialized filter, whose header has been checked with {@link #checkHeader}
+	 * @param hashes - the number of hashes, from the header
+	 * @param words - the number of words, from the header
+	 * @return false if the item was never added, true if it probably was
+	 */
+	static boolean mightContain(byte[] bytes, int start, int hashes, int words, long hash) {
+		long bits = 64L * words;
+		int offset = start + HEADER;
+		long h1 = (int) hash;
+		long h2 = (int) (hash >>> 32);
+		for (int i = 0; i < hashes; i++) {
+			long bit = ((h1 + i * h2) & Long.MAX_VALUE) % bits;
+			if ((bytes[offset + (int) (bit >>> 3)] & (1 << (bit & 7))) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Checks that the bytes are a serialized filter, whose dimensions can then be read with {@link #readHashes}
+	 * and {@link #readWords}.
+	 *
+	 * @throws HiveException if the bytes are not a filter
+	 */
+	static void checkHeader(byte[] bytes, int start, int length) throws HiveException {
+		if (length < HEADER) {
+			throw new HiveException("Not a Bloom filter");
+		}
+		int hashes = readHashes(bytes, start);
+		int words = readWords(bytes, start);
+		if (hashes < 1 || hashes > MAX_HASHES || words < 1 || words > MAX_WORDS || length != HEADER + 8 * words) {
+			throw new HiveException("Not a Bloom filter");
+		}
+	}
+
+	/**
+	 * @return the number of hashes of a serialized filter
+	 */
+	static int readHashes(byte[] bytes, int start) {
+		return getInt(bytes, start);
+	}
+
+	/**
+	 * @return the number of words of a serialized filter
+	 */
+	static int readWords(byte[] bytes, int start) {
+		return getInt(bytes, start + 4);
+	}
+
+	/**
+	 * Ors a serialized filter of the same dimensions into this one.
+	 *
+	 * @throws HiveException if the bytes are not a filter of the same dimensions
+	 */
+	void merge(byte[] bytes, int start, int length) throws HiveException {
+		checkHeader(bytes, start, length);
+		if (readHashes(bytes, start) != hashes || readWords(bytes, start) != words.length) {
+			throw new HiveException("Cannot merge a Bloom filter of " + readWords(bytes, start) + " words and "
+					+ readHashes(bytes, start) + " hashes into one of " + words.length + " words and " + hashes + " hashes");
+		}
+		int offset = start + HEADER;
+		for (int i = 0; i < words.length; i++, offset += 8) {
+			long word = 0;
+			for (int j = 7; j >= 0; j--) {
+				word = (word << 8) | (bytes[offset + j] & 0xffL);
+			}
+			words[i] |= word;
+		}
+	}
+
+	/**
+	 * Serializes the filter into a reusable writable.
+	 */
+	void serialize(BytesWritable out) {
+		out.setSize(HEADER + 8 * words.length);
+		byte[] bytes = out.getBytes();
+		putInt(bytes, 0, hashes);
+		putInt(bytes, 4, words.length);
+		int offset = HEADER;
+		for (long word : words) {
+			for (int j = 0; j < 8; j++) {
+				bytes[offset++] = (byte) (word >>> (8 * j));
+			}
+		}
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		for (int i = 0; i < 4; i++) {
+			bytes[offset + i] = (byte) (value >>> (24 - 8 * i));
+		}
+	}
+
+	private static int getInt(byte[] bytes, int offset) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,256 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDTF;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.binarysortable.BinarySortableSerDe;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * Common base for the window functions that need to see a whole partition before they can return anything.
+ * <p>
+ * The rows of the current partition are serialized into a {@link PartitionBuffer}, which spills to local disk once
+ * it outgrows {@link #MEMORY_PROPERTY}. When the partition changes, or the input ends, the buffered rows are
+ * replayed and forwarded with the computed value. The input has to be distributed and sorted in the same way as
+ * for rank().
+ * <p>
+ * The output columns are the stored arguments, normally the value and the partition columns, followed by the
+ * result. To carry more columns through, pass a struct as the value.
+ */
+public abstract class BufferedPartitionUDTF extends GenericUDTF {
+
+	/**
+	 * System property holding the number of megabytes that the buffered rows of a partition may take up in
+	 * memory before they are spilled to disk. Set it for the tasks with, for example,
+	 * "SET mapred.child.java.opts=-Dbuffered_partition.memory.mb=256;".
+	 */
+	public static final String MEMORY_PROPERTY = "buffered_partition.memory.mb";
+	private static final int DEFAULT_MEMORY_MB = 64;
+
+	protected ObjectInspector[] ois;
+	private GroupKey partition;
+	private BinarySortableSerDe serde;
+	private StructObjectInspector inputOI;
+	private List<ObjectInspector> storedOIs;
+	private Object[] stored;
+	private BytesWritable readable;
+	private PartitionBuffer buffer;
+	private Object[] output;
+
+	@Override
+	public final StructObjectInspector initialize(ObjectInspector[] ois) throws UDFArgumentException {
+		int firstStored = getFirstStoredColumn();
+		if (ois.length < getFirstPartitionColumn()) {
+			throw new UDFArgumentException(toString() + " takes " + getArgumentDescription());
+		}
+		this.ois = ois;
+		partition = GroupKey.forColumns(ois, getFirstPartitionColumn(), ois.length);
+		inputOI = BinaryGroupKey.rowInspector(ois, firstStored, ois.length);
+		serde = BinaryGroupKey.createSerDe(ois, firstStored, ois.length);
+		stored = new Object[ois.length - firstStored];
+		readable = new BytesWritable();
+		buffer = new PartitionBuffer(getMemoryLimit());
+		output = new Object[stored.length + 1];
+
+		storedOIs = new ArrayList<ObjectInspector>(stored.length);
+		try {
+			StructObjectInspector serdeOI = (StructObjectInspector) serde.getObjectInspector();
+			for (int index = 0; index < stored.length; index++) {
+				storedOIs.add(serdeOI.getAllStructFieldRefs().get(index).getFieldObjectInspector());
+			}
+		} catch (SerDeException e) {
+			throw new UDFArgumentException(e);
+		}
+		ObjectInspector resultOI = initializeFunction(ois);
+
+		ArrayList<String> fieldNames = new ArrayList<String>(output.length);
+		ArrayList<ObjectInspector> fieldOIs = new ArrayList<ObjectInspector>(output.length);
+		for (int index = 0; index < stored.length; index++) {
+			fieldNames.add(index == 0 ? "value" : "partition" + index);
+			fieldOIs.add(storedOIs.get(index));
+		}
+		fieldNames.add(toString());
+		fieldOIs.add(resultOI);
+		return ObjectInspectorFactory.getStandardStructObjectInspector(fieldNames, fieldOIs);
+	}
+
+	/**
+	 * @return the number of bytes that a buffer may take up in memory, from {@link #MEMORY_PROPERTY}
+	 */
+	protected static long getMemoryLimit() {
+		return Math.max(1, Integer.getInteger(MEMORY_PROPERTY, DEFAULT_MEMORY_MB)) * 1024L * 1024L;
+	}
+
+	/**
+	 * Called once the buffer has been set up, to initialize the function itself.
+	 *
+	 * @param ois - the ObjectInspectors of all of the arguments
+	 * @return the ObjectInspector of the result column
+	 * @throws UDFArgumentException
+	 */
+	protected abstract ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException;
+
+	/**
+	 * @return the arguments that the function takes, for error messages
+	 */
+	protected String getArgumentDescription() {
+		return "a value and optional partition columns";
+	}
+
+	/**
+	 * @return the index of the first argument that is buffered and forwarded, the ones before it are parameters
+	 */
+	protected int getFirstStoredColumn() {
+		return 0;
+	}
+
+	/**
+	 * @return the index of the first argument that belongs to the partition key
+	 */
+	protected int getFirstPartitionColumn() {
+		return getFirstStoredColumn() + 1;
+	}
+
+	/**
+	 * @return the ObjectInspector of a stored column as it is replayed, counting from the first stored column
+	 */
+	protected ObjectInspector getStoredInspector(int column) {
+		return storedOIs.get(column);
+	}
+
+	@Override
+	public void process(Object[] arguments) throws HiveException {
+		if (partition.update(arguments) && buffer.size() > 0) {
+			replay();
+		}
+		for (int index = 0; index < stored.length; index++) {
+			stored[index] = arguments[getFirstStoredColumn() + index];
+		}
+		long row = buffer.size();
+		try {
+			BytesWritable bytes = (BytesWritable) serde.serialize(stored, inputOI);
+			buffer.add(bytes.getBytes(), 0, bytes.getLength());
+		} catch (SerDeException e) {
+			throw new HiveException(e);
+		} catch (IOException e) {
+			throw new HiveException(e);
+		}
+		buffered(arguments, row);
+	}
+
+	/**
+	 * Forwards every buffered row of the partition with its result, then empties the buffer.
+	 *
+	 * @throws HiveException
+	 */
+	private void replay() throws HiveException {
+		long rows = buffer.size();
+		partitionComplete(rows);
+		try {
+			buffer.startReplay();
+			for (long row = 0; buffer.next(); row++) {
+				List<Object> fields = deserialize(buffer.getBytes(), buffer.getStart(), buffer.getLength());
+				for (int index = 0; index < stored.length; index++) {
+					output[index] = fields.get(index);
+				}
+				output[stored.length] = result(row, rows);
+				forward(output);
+			}
+			buffer.clear();
+		} catch (IOException e) {
+			throw new HiveException(e);
+		}
+		partitionReplayed();
+	}
+
+	/**
+	 * Deserializes the last row of the partition. The fields are reused by the next deserialization, so anything
+	 * that has to be kept must be copied.
+	 *
+	 * @throws HiveException
+	 */
+	protected List<Object> getLastRow() throws HiveException {
+		return deserialize(buffer.getLastBytes(), 0, buffer.getLastLength());
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<Object> deserialize(byte[] bytes, int start, int length) throws HiveException {
+		readable.set(bytes, start, length);
+		try {
+			return (List<Object>) serde.deserialize(readable);
+		} catch (SerDeException e) {
+			throw new HiveException(e);
+		}
+	}
+
+	@Override
+	public void close() throws HiveException {
+		if (buffer != null && buffer.size() > 0) {
+			replay();
+		}
+	}
+
+	/**
+	 * Called after each row has been buffered.
+	 *
+	 * @param arguments - the arguments of the row
+	 * @param row - the index of the row within its partition
+	 * @throws HiveException
+	 */
+	protected void buffered(Object[] arguments, long row) throws HiveException {
+	}
+
+	/**
+	 * Called once the last row of a partition has been buffered, before any row is replayed.
+	 *
+	 * @param rows - the number of rows in the partition
+	 * @throws HiveException
+	 */
+	protected void partitionComplete(long rows) throws HiveException {
+	}
+
+	/**
+	 * Called once every row of a partition has been forwarded.
+	 *
+	 * @throws HiveException
+	 */
+	protected void partitionReplayed() throws HiveException {
+	}
+
+	/**
+	 * Computes the result for a row as it is replayed.
+	 *
+	 * @param row - the index of the row within its partition
+	 * @param rows - the number of rows in the partition
+	 * @return the result, which may be reused from row to row
+	 * @throws HiveException
+	 */
+	protected abstract Object result(long row, long rows) throws HiveException;
+
+}
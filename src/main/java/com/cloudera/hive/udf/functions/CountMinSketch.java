@@ -0,0 +1,189 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * A count-min sketch: depth rows of width counters, with each item counted once in every row.
+ * <p>
+ * The estimate of an item is the smallest of its counters, which is never less than its true count and, with
+ * probability 1 - e^-depth, more by at most e / width of the total count. Sketches of the same dimensions are
+ * merged by adding their counters. The row indices come from one 64 bit hash, split into two 32 bit halves and
+ * combined as h1 + row * h2.
+ * <p>
+ * The serialized form is the depth and width, followed by every counter as a variable-length integer, which keeps
+ * the many small counters of a sparse sketch small.
+ */
+class CountMinSketch {
+
+	static final int DEFAULT_DEPTH = 4;
+	static final int DEFAULT_WIDTH = 1024;
+	static final int MAX_DEPTH = 16;
+	static final int MAX_WIDTH = 1 << 20;
+
+	private final int depth;
+	private final int width;
+	private final long[][] counters;
+
+	CountMinSketch(int depth, int width) {
+		this.depth = depth;
+		this.width = width;
+		this.counters = new long[depth][width];
+	}
+
+	int getDepth() {
+		return depth;
+	}
+
+	int getWidth() {
+		return width;
+	}
+
+	void clear() {
+		for (long[] row : counters) {
+			Arrays.fill(row, 0);
+		}
+	}
+
+	/**
+	 * Counts an item.
+	 *
+	 * @return the new estimate of the item's count
+	 */
+	long add(long hash, long count) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			int column = ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+			long value = counters[row][column] += count;
+			estimate = Math.min(estimate, value);
+		}
+		return estimate;
+	}
+
+	/**
+	 * @return the estimate of an item's count
+	 */
+	long estimate(long hash) {
+		int h1 = (int) hash;
+		int h2 = (int) (hash >>> 32);
+		long estimate = Long.MAX_VALUE;
+		for (int row = 0; row < depth; row++) {
+			int column = ((h1 + row * h2) & Integer.MAX_VALUE) % width;
+			estimate = Math.min(estimate, counters[row][column]);
+		}
+		return estimate;
+	}
+
+	/**
+	 * Reads the dimensions of a serialized sketch.
+	 *
+	 * @return the depth and the width
+	 * @throws HiveException if the bytes are not a sketch
+	 */
+	static int[] readDimensions(byte[] bytes, int start, int length) throws HiveException {
+		if (length < 8) {
+			throw new HiveException("Not a count-min sketch");
+		}
+		int depth = getInt(bytes, start);
+		int width = getInt(bytes, start + 4);
+		if (depth < 1 || depth > MAX_DEPTH || width < 1 || width > MAX_WIDTH) {
+			throw new HiveException("Not a count-min sketch");
+		}
+		return new int[] {depth, width};
+	}
+
+	/**
+	 * Adds the counters of a serialized sketch of the same dimensions to this one.
+	 *
+	 * @throws HiveException if the bytes are not a sketch of the same dimensions
+	 */
+	void merge(byte[] bytes, int start, int length) throws HiveException {
+		int[] dimensions = readDimensions(bytes, start, length);
+		if (dimensions[0] != depth || dimensions[1] != width) {
+			throw new HiveException("Cannot merge a " + dimensions[0] + " x " + dimensions[1] + " count-min sketch into a "
+					+ depth + " x " + width + " one");
+		}
+		int offset = start + 8;
+		int end = start + length;
+		for (int row = 0; row < depth; row++) {
+			long[] counts = counters[row];
+			for (int column = 0; column < width; column++) {
+				long value = 0;
+				int shift = 0;
+				byte b;
+				do {
+					if (offset >= end) {
+						throw new HiveException("Truncated count-min sketch");
+					}
+					b = bytes[offset++];
+					value |= (long) (b & 0x7f) << shift;
+					shift += 7;
+				} while (b < 0);
+				counts[column] += value;
+			}
+		}
+	}
+
+	/**
+	 * Serializes the sketch into a reusable writable.
+	 */
+	void serialize(BytesWritable out) {
+		int length = 8;
+		for (long[] row : counters) {
+			for (long value : row) {
+				length += 1 + (63 - Long.numberOfLeadingZeros(value | 1)) / 7;
+			}
+		}
+		out.setSize(length);
+		byte[] bytes = out.getBytes();
+		putInt(bytes, 0, depth);
+		putInt(bytes, 4, width);
+		int offset = 8;
+		for (long[] row : counters) {
+			for (long value : row) {
+				while ((value & ~0x7fL) != 0) {
+					bytes[offset++] = (byte) ((value & 0x7f) | 0x80);
+					value >>>= 7;
+				}
+				bytes[offset++] = (byte) value;
+			}
+		}
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		for (int i = 0; i < 4; i++) {
+			bytes[offset + i] = (byte) (value >>> (24 - 8 * i));
+		}
+	}
+
+	private static int getInt(byte[] bytes, int offset) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+
+/**
+ * This UDTF provides a cume_dist() function: the fraction of the partition's rows whose value is less than or
+ * equal to the current row's.
+ */
+@Description(name = "cume_dist", value = "_FUNC_(value, optional partition columns ...) - Forwards each row of a partitioned, sorted window with its cumulative distribution, from above 0 to 1.")
+public class CumeDist extends PeerGroupUDTF {
+
+	@Override
+	protected Object result(long groupStart, long groupEnd, long rows) {
+		result.set((double) groupEnd / rows);
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "cume_dist";
+	}
+
+}
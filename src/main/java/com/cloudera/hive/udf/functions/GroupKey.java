@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+
+/**
+ * Tracks the value of a contiguous range of UDF arguments from one row to the next.
+ */
+abstract class GroupKey {
+
+	/**
+	 * Creates the cheapest key for the given columns. Keys made up only of primitive columns are compared
+	 * as binary-sortable bytes, anything else falls back to comparing standard objects.
+	 *
+	 * @param ois - the ObjectInspectors of all of the UDF arguments
+	 * @param first - the index of the first argument that makes up the key
+	 * @param last - the index after the last argument that makes up the key
+	 * @return a new key
+	 * @throws UDFArgumentException
+	 */
+	static GroupKey forColumns(ObjectInspector[] ois, int first, int last) throws UDFArgumentException {
+		if (last <= first) {
+			return new ObjectGroupKey(ois, first, last);
+		}
+		for (int index = first; index < last; index++) {
+			if (ois[index].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+				return new ObjectGroupKey(ois, first, last);
+			}
+		}
+		return new BinaryGroupKey(ois, first, last);
+	}
+
+	/**
+	 * Compares the key columns of the given row with the previous row, and remembers them if they differ.
+	 *
+	 * @param arguments - the UDF arguments of the current row
+	 * @return true if this is the first row, or if the key differs from the previous row
+	 * @throws HiveException
+	 */
+	abstract boolean update(DeferredObject[] arguments) throws HiveException;
+
+	/**
+	 * As {@link #update(DeferredObject[])}, for the already evaluated arguments of a UDTF.
+	 *
+	 * @param arguments - the UDTF arguments of the current row
+	 * @return true if this is the first row, or if the key differs from the previous row
+	 * @throws HiveException
+	 */
+	abstract boolean update(Object[] arguments) throws HiveException;
+
+	/**
+	 * Forgets the previous key, so that the next row is always treated as a change.
+	 */
+	abstract void reset();
+
+}
@@ -0,0 +1,420 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.IntObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * This UDAF finds the k most frequent values of a column with a {@link CountMinSketch}, without a group by on the
+ * values or a sort.
+ * <p>
+ * Every value is counted in the sketch, and the k values with the highest estimates so far are kept as candidates
+ * in a min-heap, so a value is only copied when it displaces the least frequent candidate. A group costs depth x
+ * width counters and k candidates however many distinct values it has; the optional width and depth are constants,
+ * 1024 and 4 by default, and the counts are overestimated by at most e / width of the group's rows with probability
+ * 1 - e^-depth.
+ * <p>
+ * The partial result is a struct of k, the serialized sketch and the candidates. Partials are merged by adding
+ * their sketches and re-estimating every candidate of both, so the final counts are estimated over all the rows.
+ */
+@Description(name = "heavy_hitters", value = "_FUNC_(value, k, optional width, optional depth) - Returns the k most frequent values of the group with their estimated counts, as an array of structs, most frequent first.")
+public class HeavyHitters extends AbstractGenericUDAFResolver {
+
+	static final int MAX_K = 10000;
+
+	@Override
+	public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters) throws SemanticException {
+		if (parameters.length < 2 || parameters.length > 4) {
+			throw new UDFArgumentLengthException("heavy_hitters takes a value, k, and an optional width and depth");
+		}
+		if (parameters[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			throw new UDFArgumentTypeException(0, "Only primitive values can be counted, but " + parameters[0].getTypeName() + " was passed");
+		}
+		HllSketch.checkIntegral(parameters[1], 1, "k");
+		if (parameters.length > 2) {
+			HllSketch.checkIntegral(parameters[2], 2, "The width");
+		}
+		if (parameters.length > 3) {
+			HllSketch.checkIntegral(parameters[3], 3, "The depth");
+		}
+		return new HeavyHittersEvaluator();
+	}
+
+	/**
+	 * Counts each group's values in a sketch, and keeps its k best candidates.
+	 */
+	public static class HeavyHittersEvaluator extends GenericUDAFEvaluator {
+
+		// For PARTIAL1 and COMPLETE: the original arguments
+		private PrimitiveObjectInspector kOI;
+		private PrimitiveObjectInspector widthOI;
+		private PrimitiveObjectInspector depthOI;
+
+		// For PARTIAL2 and FINAL: the partial struct
+		private StructObjectInspector partialOI;
+		private StructField kField;
+		private StructField sketchField;
+		private StructField candidatesField;
+		private BinaryObjectInspector sketchOI;
+		private ListObjectInspector candidatesOI;
+
+		// The values, from the original arguments or the candidates of the partials, and their standard copies
+		private ObjectInspector valueOI;
+		private ValueHasher hasher;
+		private ObjectInspector storedOI;
+
+		private int k;	// Read from the first row, or the first partial
+		private final IntWritable partialK = new IntWritable();
+		private final BytesWritable sketch = new BytesWritable();
+		private final List<Object> candidates = new ArrayList<Object>();
+		private final Object[] partial = new Object[3];
+
+		@Override
+		public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+			super.init(m, parameters);
+			if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+				valueOI = parameters[0];
+				kOI = (PrimitiveObjectInspector) parameters[1];
+				widthOI = parameters.length > 2 ? (PrimitiveObjectInspector) parameters[2] : null;
+				depthOI = parameters.length > 3 ? (PrimitiveObjectInspector) parameters[3] : null;
+			} else {
+				partialOI = (StructObjectInspector) parameters[0];
+				kField = partialOI.getStructFieldRef("k");
+				sketchField = partialOI.getStructFieldRef("sketch");
+				candidatesField = partialOI.getStructFieldRef("candidates");
+				sketchOI = (BinaryObjectInspector) sketchField.getFieldObjectInspector();
+				candidatesOI = (ListObjectInspector) candidatesField.getFieldObjectInspector();
+				valueOI = candidatesOI.getListElementObjectInspector();
+			}
+			hasher = new ValueHasher(valueOI, "heavy_hitters");
+			storedOI = ObjectInspectorUtils.getStandardObjectInspector(valueOI);
+			if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2) {
+				List<String> names = new ArrayList<String>(3);
+				List<ObjectInspector> ois = new ArrayList<ObjectInspector>(3);
+				names.add("k");
+				ois.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+				names.add("sketch");
+				ois.add(PrimitiveObjectInspectorFactory.writableBinaryObjectInspector);
+				names.add("candidates");
+				ois.add(ObjectInspectorFactory.getStandardListObjectInspector(storedOI));
+				return ObjectInspectorFactory.getStandardStructObjectInspector(names, ois);
+			}
+			List<String> names = new ArrayList<String>(2);
+			List<ObjectInspector> ois = new ArrayList<ObjectInspector>(2);
+			names.add("value");
+			ois.add(storedOI);
+			names.add("count");
+			ois.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+			return ObjectInspectorFactory.getStandardListObjectInspector(ObjectInspectorFactory.getStandardStructObjectInspector(names, ois));
+		}
+
+		/**
+		 * A candidate, with its place in the heap.
+		 */
+		static class Candidate {
+			Object value;
+			long hash;
+			long estimate;
+			int position;
+		}
+
+		/**
+		 * The sketch, and the candidates: a min-heap on the estimates, indexed by hash in an open addressing table.
+		 */
+		static class HeavyHittersBuffer implements AggregationBuffer {
+			CountMinSketch sketch;	// Created by the first value, once the dimensions are known
+			Candidate[] heap;
+			int size;
+			Candidate[] table;
+			int mask;
+
+			void initialize(CountMinSketch sketch, int k) {
+				this.sketch = sketch;
+				heap = new Candidate[k];
+				table = new Candidate[Integer.highestOneBit(k) * 4];
+				mask = table.length - 1;
+			}
+
+			void clear() {
+				if (sketch != null) {
+					sketch.clear();
+					Arrays.fill(heap, null);
+					Arrays.fill(table, null);
+					size = 0;
+				}
+			}
+
+			/**
+			 * Makes a value a candidate, or updates it if it already is one, if its estimate is high enough.
+			 */
+			void offer(long hash, long estimate, Object value, ObjectInspector oi) {
+				if (size == heap.length && estimate <= heap[0].estimate) {
+					// An existing candidate could not be this low, since its estimate only grows
+					return;
+				}
+				Candidate candidate = find(hash);
+				if (candidate != null) {
+					candidate.estimate = estimate;
+					siftDown(candidate.position);
+					return;
+				}
+				if (size < heap.length) {
+					candidate = new Candidate();
+					candidate.position = size;
+					heap[size++] = candidate;
+				} else {
+					candidate = heap[0];
+					remove(candidate);
+				}
+				candidate.value = ObjectInspectorUtils.copyToStandardObject(value, oi);
+				candidate.hash = hash;
+				candidate.estimate = estimate;
+				insert(candidate);
+				siftUp(candidate.position);
+				siftDown(candidate.position);
+			}
+
+			/**
+			 * Re-estimates every candidate, after sketches have been merged.
+			 */
+			void refresh() {
+				for (int i = 0; i < size; i++) {
+					heap[i].estimate = sketch.estimate(heap[i].hash);
+				}
+				for (int i = size / 2 - 1; i >= 0; i--) {
+					siftDown(i);
+				}
+			}
+
+			private void siftUp(int position) {
+				Candidate candidate = heap[position];
+				while (position > 0) {
+					int parent = (position - 1) >>> 1;
+					if (heap[parent].estimate <= candidate.estimate) {
+						break;
+					}
+					heap[position] = heap[parent];
+					heap[position].position = position;
+					position = parent;
+				}
+				heap[position] = candidate;
+				candidate.position = position;
+			}
+
+			private void siftDown(int position) {
+				Candidate candidate = heap[position];
+				while (true) {
+					int child = 2 * position + 1;
+					if (child >= size) {
+						break;
+					}
+					if (child + 1 < size && heap[child + 1].estimate < heap[child].estimate) {
+						child++;
+					}
+					if (candidate.estimate <= heap[child].estimate) {
+						break;
+					}
+					heap[position] = heap[child];
+					heap[position].position = position;
+					position = child;
+				}
+				heap[position] = candidate;
+				candidate.position = position;
+			}
+
+			private int slot(long hash) {
+				return (int) (hash ^ (hash >>> 32)) & mask;
+			}
+
+			private Candidate find(long hash) {
+				for (int i = slot(hash); table[i] != null; i = (i + 1) & mask) {
+					if (table[i].hash == hash) {
+						return table[i];
+					}
+				}
+				return null;
+			}
+
+			private void insert(Candidate candidate) {
+				int i = slot(candidate.hash);
+				while (table[i] != null) {
+					i = (i + 1) & mask;
+				}
+				table[i] = candidate;
+			}
+
+			private void remove(Candidate candidate) {
+				int i = slot(candidate.hash);
+				while (table[i] != candidate) {
+					i = (i + 1) & mask;
+				}
+				// Shift back the entries after it that would no longer be reachable across the gap
+				for (int j = (i + 1) & mask; table[j] != null; j = (j + 1) & mask) {
+					int home = slot(table[j].hash);
+					if (((j - home) & mask) >= ((j - i) & mask)) {
+						table[i] = table[j];
+						i = j;
+					}
+				}
+				table[i] = null;
+			}
+
+			/**
+			 * @return the candidates, most frequent first
+			 */
+			Candidate[] sorted() {
+				Candidate[] sorted = Arrays.copyOf(heap, size);
+				Arrays.sort(sorted, new Comparator<Candidate>() {
+					@Override
+					public int compare(Candidate a, Candidate b) {
+						return a.estimate > b.estimate ? -1 : a.estimate < b.estimate ? 1 : 0;
+					}
+				});
+				return sorted;
+			}
+		}
+
+		@Override
+		public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+			return new HeavyHittersBuffer();
+		}
+
+		@Override
+		public void reset(AggregationBuffer agg) throws HiveException {
+			((HeavyHittersBuffer) agg).clear();
+		}
+
+		@Override
+		public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+			if (k == 0) {
+				k = readConstant(parameters[1], kOI, "k", 1, MAX_K);
+			}
+			if (parameters[0] == null) {
+				return;
+			}
+			HeavyHittersBuffer buffer = (HeavyHittersBuffer) agg;
+			if (buffer.sketch == null) {
+				int width = widthOI == null ? CountMinSketch.DEFAULT_WIDTH
+						: readConstant(parameters[2], widthOI, "The width", 1, CountMinSketch.MAX_WIDTH);
+				int depth = depthOI == null ? CountMinSketch.DEFAULT_DEPTH
+						: readConstant(parameters[3], depthOI, "The depth", 1, CountMinSketch.MAX_DEPTH);
+				buffer.initialize(new CountMinSketch(depth, width), k);
+			}
+			long hash = hasher.hash(parameters[0]);
+			buffer.offer(hash, buffer.sketch.add(hash, 1), parameters[0], valueOI);
+		}
+
+		private static int readConstant(Object value, PrimitiveObjectInspector oi, String name, int min, int max) throws HiveException {
+			if (value == null) {
+				throw new HiveException(name + " must not be null");
+			}
+			long constant = PrimitiveObjectInspectorUtils.getLong(value, oi);
+			if (constant < min || constant > max) {
+				throw new HiveException(name + " must be from " + min + " to " + max + ", but was " + constant);
+			}
+			return (int) constant;
+		}
+
+		@Override
+		public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+			HeavyHittersBuffer buffer = (HeavyHittersBuffer) agg;
+			if (buffer.sketch == null) {
+				return null;
+			}
+			buffer.sketch.serialize(sketch);
+			candidates.clear();
+			for (int i = 0; i < buffer.size; i++) {
+				candidates.add(buffer.heap[i].value);
+			}
+			partialK.set(k);
+			partial[0] = partialK;
+			partial[1] = sketch;
+			partial[2] = candidates;
+			return partial;
+		}
+
+		@Override
+		public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+			if (partial == null) {
+				return;
+			}
+			if (k == 0) {
+				k = ((IntObjectInspector) kField.getFieldObjectInspector()).get(partialOI.getStructFieldData(partial, kField));
+			}
+			HeavyHittersBuffer buffer = (HeavyHittersBuffer) agg;
+			BytesWritable bytes = sketchOI.getPrimitiveWritableObject(partialOI.getStructFieldData(partial, sketchField));
+			if (buffer.sketch == null) {
+				int[] dimensions = CountMinSketch.readDimensions(bytes.getBytes(), 0, bytes.getLength());
+				buffer.initialize(new CountMinSketch(dimensions[0], dimensions[1]), k);
+			}
+			buffer.sketch.merge(bytes.getBytes(), 0, bytes.getLength());
+			buffer.refresh();
+			Object list = partialOI.getStructFieldData(partial, candidatesField);
+			int length = candidatesOI.getListLength(list);
+			for (int i = 0; i < length; i++) {
+				Object value = candidatesOI.getListElement(list, i);
+				if (value != null) {
+					long hash = hasher.hash(value);
+					buffer.offer(hash, buffer.sketch.estimate(hash), value, valueOI);
+				}
+			}
+		}
+
+		@Override
+		public Object terminate(AggregationBuffer agg) throws HiveException {
+			HeavyHittersBuffer buffer = (HeavyHittersBuffer) agg;
+			if (buffer.sketch == null) {
+				return null;
+			}
+			Candidate[] sorted = buffer.sorted();
+			List<Object[]> result = new ArrayList<Object[]>(sorted.length);
+			for (Candidate candidate : sorted) {
+				result.add(new Object[] {candidate.value, new LongWritable(candidate.estimate)});
+			}
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * This UDF estimates the number of distinct values in the union of one or more {@link HllSketch} sketches.
+ * Null sketches are skipped, and the estimate of no sketches is 0.
+ */
+@Description(name = "hll_estimate", value = "_FUNC_(sketch, optional sketches ...) - Returns the estimated number of distinct values in the union of the HyperLogLog sketches.")
+public class HllEstimate extends GenericUDF {
+
+	private BinaryObjectInspector[] ois;
+	private HyperLogLog union;	// Reused while the precision stays the same
+	private final LongWritable result = new LongWritable();
+
+	@Override
+	public ObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {
+		if (arguments.length < 1) {
+			throw new UDFArgumentException("hll_estimate takes at least one sketch");
+		}
+		ois = new BinaryObjectInspector[arguments.length];
+		for (int i = 0; i < arguments.length; i++) {
+			if (!"binary".equals(arguments[i].getTypeName())) {
+				throw new UDFArgumentException("A sketch must be a binary, but " + arguments[i].getTypeName() + " was passed");
+			}
+			ois[i] = (BinaryObjectInspector) arguments[i];
+		}
+		return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+	}
+
+	@Override
+	public Object evaluate(DeferredObject[] arguments) throws HiveException {
+		boolean empty = true;
+		for (int i = 0; i < arguments.length; i++) {
+			Object sketch = arguments[i].get();
+			if (sketch == null) {
+				continue;
+			}
+			BytesWritable bytes = ois[i].getPrimitiveWritableObject(sketch);
+			if (empty) {
+				int precision = HyperLogLog.readPrecision(bytes.getBytes(), 0, bytes.getLength());
+				if (union == null || union.getPrecision() != precision) {
+					union = new HyperLogLog(precision);
+				} else {
+					union.clear();
+				}
+				empty = false;
+			}
+			union.merge(bytes.getBytes(), 0, bytes.getLength());
+		}
+		result.set(empty ? 0 : union.estimate());
+		return result;
+	}
+
+	@Override
+	public String getDisplayString(String[] children) {
+		StringBuilder builder = new StringBuilder("hll_estimate(");
+		for (int i = 0; i < children.length; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(children[i]);
+		}
+		return builder.append(')').toString();
+	}
+
+}
@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * This UDAF builds a {@link HyperLogLog} sketch of the distinct values of a column, to be estimated with
+ * {@link HllEstimate} or rolled up with {@link HllUnion}.
+ * <p>
+ * The aggregation buffer is the register array itself, and the partial result is the serialized sketch, so a
+ * group costs 2^precision bytes at most however many values it has. The precision is an optional constant from
+ * 4 to 16, 12 by default.
+ */
+@Description(name = "hll_sketch", value = "_FUNC_(value, optional precision) - Returns a HyperLogLog sketch of the distinct values of the group, as a binary.")
+public class HllSketch extends AbstractGenericUDAFResolver {
+
+	@Override
+	public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters) throws SemanticException {
+		if (parameters.length < 1 || parameters.length > 2) {
+			throw new UDFArgumentLengthException("hll_sketch takes a value and an optional precision");
+		}
+		if (parameters[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			throw new UDFArgumentTypeException(0, "Only primitive values can be sketched, but " + parameters[0].getTypeName() + " was passed");
+		}
+		if (parameters.length == 2) {
+			checkIntegral(parameters[1], 1, "The precision");
+		}
+		return new HllEvaluator(false);
+	}
+
+	/**
+	 * Checks that a parameter is an integer.
+	 *
+	 * @throws UDFArgumentTypeException if it is not
+	 */
+	static void checkIntegral(TypeInfo parameter, int index, String name) throws UDFArgumentTypeException {
+		if (parameter.getCategory() == ObjectInspector.Category.PRIMITIVE) {
+			switch (((PrimitiveTypeInfo) parameter).getPrimitiveCategory()) {
+			case BYTE:
+			case SHORT:
+			case INT:
+			case LONG:
+				return;
+			default:
+				break;
+			}
+		}
+		throw new UDFArgumentTypeException(index, name + " must be an integer, but " + parameter.getTypeName() + " was passed");
+	}
+
+	/**
+	 * Adds values, or merges sketches, into a sketch for each group.
+	 */
+	public static class HllEvaluator extends GenericUDAFEvaluator {
+
+		private final boolean union;
+
+		// For PARTIAL1 and COMPLETE: the original arguments
+		private ValueHasher hasher;
+		private PrimitiveObjectInspector precisionOI;
+
+		// The serialized sketches being merged: partial results, or the original arguments of a union
+		private BinaryObjectInspector sketchOI;
+
+		private final BytesWritable result = new BytesWritable();
+
+		public HllEvaluator(boolean union) {
+			this.union = union;
+		}
+
+		@Override
+		public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+			super.init(m, parameters);
+			if ((m == Mode.PARTIAL1 || m == Mode.COMPLETE) && !union) {
+				hasher = new ValueHasher(parameters[0], "hll_sketch");
+				precisionOI = parameters.length > 1 ? (PrimitiveObjectInspector) parameters[1] : null;
+			} else {
+				sketchOI = (BinaryObjectInspector) parameters[0];
+			}
+			return PrimitiveObjectInspectorFactory.writableBinaryObjectInspector;
+		}
+
+		static class HllBuffer implements AggregationBuffer {
+			HyperLogLog sketch;	// Created by the first value, once the precision is known
+		}
+
+		@Override
+		public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+			return new HllBuffer();
+		}
+
+		@Override
+		public void reset(AggregationBuffer agg) throws HiveException {
+			HllBuffer buffer = (HllBuffer) agg;
+			if (buffer.sketch != null) {
+				buffer.sketch.clear();
+			}
+		}
+
+		@Override
+		public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+			if (parameters[0] == null) {
+				return;
+			}
+			if (union) {
+				merge(agg, parameters[0]);
+				return;
+			}
+			HllBuffer buffer = (HllBuffer) agg;
+			if (buffer.sketch == null) {
+				buffer.sketch = new HyperLogLog(readPrecision(parameters));
+			}
+			buffer.sketch.add(hasher.hash(parameters[0]));
+		}
+
+		private int readPrecision(Object[] parameters) throws HiveException {
+			if (precisionOI == null) {
+				return HyperLogLog.DEFAULT_PRECISION;
+			}
+			if (parameters[1] == null) {
+				throw new HiveException("The precision must not be null");
+			}
+			int precision = PrimitiveObjectInspectorUtils.getInt(parameters[1], precisionOI);
+			if (precision < HyperLogLog.MIN_PRECISION || precision > HyperLogLog.MAX_PRECISION) {
+				throw new HiveException("The precision must be from " + HyperLogLog.MIN_PRECISION + " to "
+						+ HyperLogLog.MAX_PRECISION + ", but was " + precision);
+			}
+			return precision;
+		}
+
+		@Override
+		public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+			return terminate(agg);
+		}
+
+		@Override
+		public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+			if (partial == null) {
+				return;
+			}
+			HllBuffer buffer = (HllBuffer) agg;
+			BytesWritable bytes = sketchOI.getPrimitiveWritableObject(partial);
+			if (buffer.sketch == null) {
+				buffer.sketch = new HyperLogLog(HyperLogLog.readPrecision(bytes.getBytes(), 0, bytes.getLength()));
+			}
+			buffer.sketch.merge(bytes.getBytes(), 0, bytes.getLength());
+		}
+
+		@Override
+		public Object terminate(AggregationBuffer agg) throws HiveException {
+			HllBuffer buffer = (HllBuffer) agg;
+			if (buffer.sketch == null) {
+				return null;
+			}
+			buffer.sketch.serialize(result);
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+/**
+ * This UDAF merges stored {@link HllSketch} sketches of the same precision into one, so that, for example, daily
+ * sketches can be rolled up to weekly ones without going back to the data.
+ */
+@Description(name = "hll_union", value = "_FUNC_(sketch) - Returns the union of the HyperLogLog sketches of the group, as a binary.")
+public class HllUnion extends AbstractGenericUDAFResolver {
+
+	@Override
+	public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters) throws SemanticException {
+		if (parameters.length != 1) {
+			throw new UDFArgumentLengthException("hll_union takes a single sketch");
+		}
+		if (!"binary".equals(parameters[0].getTypeName())) {
+			throw new UDFArgumentTypeException(0, "A sketch must be a binary, but " + parameters[0].getTypeName() + " was passed");
+		}
+		return new HllSketch.HllEvaluator(true);
+	}
+
+}
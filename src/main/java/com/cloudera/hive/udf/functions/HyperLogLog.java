@@ -0,0 +1,190 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * A HyperLogLog sketch of the distinct 64 bit hashes that have been added to it.
+ * <p>
+ * There are 2^precision one-byte registers, and the relative error of the estimate is about
+ * 1.04 / sqrt(2^precision). Two sketches of the same precision are merged by taking the larger of each pair of
+ * registers, so sketches built separately can be combined without going back to the data.
+ * <p>
+ * The serialized form is a format byte, the precision and then either every register (dense), or a 16 bit index
+ * and a value for each non-zero register (sparse), whichever is smaller.
+ */
+class HyperLogLog {
+
+	static final int MIN_PRECISION = 4;
+	static final int MAX_PRECISION = 16;
+	static final int DEFAULT_PRECISION = 12;
+
+	private static final byte DENSE = 0;
+	private static final byte SPARSE = 1;
+
+	private final int precision;
+	private final byte[] registers;
+
+	HyperLogLog(int precision) {
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	int getPrecision() {
+		return precision;
+	}
+
+	void clear() {
+		Arrays.fill(registers, (byte) 0);
+	}
+
+	/**
+	 * Adds a hash. The top bits choose the register, which keeps the longest run of leading zeros in the rest.
+	 */
+	void add(long hash) {
+		int index = (int) (hash >>> (64 - precision));
+		// The marker bit caps the run at the number of bits left
+		int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+		if (registers[index] < rank) {
+			registers[index] = (byte) rank;
+		}
+	}
+
+	/**
+	 * @return the estimated number of distinct hashes that have been added
+	 */
+	long estimate() {
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for (int index = 0; index < m; index++) {
+			sum += Math.scalb(1.0, -registers[index]);
+			if (registers[index] == 0) {
+				zeros++;
+			}
+		}
+		double alpha;
+		switch (m) {
+		case 16:
+			alpha = 0.673;
+			break;
+		case 32:
+			alpha = 0.697;
+			break;
+		case 64:
+			alpha = 0.709;
+			break;
+		default:
+			alpha = 0.7213 / (1 + 1.079 / m);
+			break;
+		}
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			// Linear counting is more accurate while many registers are still empty
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Reads the precision of a serialized sketch.
+	 *
+	 * @throws HiveException if the bytes are not a sketch
+	 */
+	static int readPrecision(byte[] bytes, int start, int length) throws HiveException {
+		if (length < 2 || (bytes[start] != DENSE && bytes[start] != SPARSE)
+				|| bytes[start + 1] < MIN_PRECISION || bytes[start + 1] > MAX_PRECISION) {
+			throw new HiveException("Not a HyperLogLog sketch");
+		}
+		return bytes[start + 1];
+	}
+
+	/**
+	 * Merges a serialized sketch of the same precision into this one.
+	 *
+	 * @throws HiveException if the bytes are not a sketch of the same precision
+	 */
+	void merge(byte[] bytes, int start, int length) throws HiveException {
+		if (readPrecision(bytes, start, length) != precision) {
+			throw new HiveException("Cannot merge a HyperLogLog sketch of precision " + bytes[start + 1] + " into one of precision " + precision);
+		}
+		if (bytes[start] == DENSE) {
+			if (length != registers.length + 2) {
+				throw new HiveException("Truncated HyperLogLog sketch");
+			}
+			for (int index = 0; index < registers.length; index++) {
+				byte value = bytes[start + 2 + index];
+				if (registers[index] < value) {
+					registers[index] = value;
+				}
+			}
+		} else {
+			if ((length - 2) % 3 != 0) {
+				throw new HiveException("Truncated HyperLogLog sketch");
+			}
+			for (int offset = start + 2; offset < start + length; offset += 3) {
+				int index = (bytes[offset] & 0xff) << 8 | (bytes[offset + 1] & 0xff);
+				byte value = bytes[offset + 2];
+				if (index >= registers.length) {
+					throw new HiveException("Corrupt HyperLogLog sketch");
+				}
+				if (registers[index] < value) {
+					registers[index] = value;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Serializes the sketch into a reusable writable.
+	 */
+	void serialize(BytesWritable out) {
+		int used = 0;
+		for (int index = 0; index < registers.length; index++) {
+			if (registers[index] != 0) {
+				used++;
+			}
+		}
+		if (3 * used < registers.length) {
+			out.setSize(2 + 3 * used);
+			byte[] bytes = out.getBytes();
+			bytes[0] = SPARSE;
+			bytes[1] = (byte) precision;
+			int offset = 2;
+			for (int index = 0; index < registers.length; index++) {
+				if (registers[index] != 0) {
+					bytes[offset++] = (byte) (index >>> 8);
+					bytes[offset++] = (byte) index;
+					bytes[offset++] = registers[index];
+				}
+			}
+		} else {
+			out.setSize(2 + registers.length);
+			byte[] bytes = out.getBytes();
+			bytes[0] = DENSE;
+			bytes[1] = (byte) precision;
+			System.arraycopy(registers, 0, bytes, 2, registers.length);
+		}
+	}
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+/**
+ * A stable merge sort of row indices, for keys that are held in primitive arrays.
+ * <p>
+ * Subclasses compare two rows by index, so the keys are never boxed and the rows themselves never move. Rows
+ * with equal keys keep their original order.
+ */
+abstract class IndexSort {
+
+	/**
+	 * Compares the keys of two rows.
+	 *
+	 * @param a - the index of a row
+	 * @param b - the index of another row
+	 * @return a negative number, zero or a positive number as a's key is less than, equal to or greater than b's
+	 */
+	abstract int compare(int a, int b);
+
+	/**
+	 * Sorts part of an array of row indices by key.
+	 *
+	 * @param order - the row indices
+	 * @param from - the first position to sort
+	 * @param to - the position after the last one to sort
+	 */
+	void sort(int[] order, int from, int to) {
+		if (to - from >= 2) {
+			sort(order, new int[order.length], from, to);
+		}
+	}
+
+	/**
+	 * As {@link #sort(int[], int, int)}, with a reusable scratch array for the merges.
+	 *
+	 * @param scratch - an array at least as long as to
+	 */
+	void sort(int[] order, int[] scratch, int from, int to) {
+		int length = to - from;
+		if (length < 2) {
+			return;
+		}
+		int[] source = order;
+		int[] target = scratch;
+		for (int width = 1; width < length; width *= 2) {
+			for (int left = from; left < to; left += 2 * width) {
+				int middle = Math.min(left + width, to);
+				int right = Math.min(left + 2 * width, to);
+				merge(source, target, left, middle, right);
+			}
+			int[] swap = source;
+			source = target;
+			target = swap;
+		}
+		if (source != order) {
+			System.arraycopy(source, from, order, from, length);
+		}
+	}
+
+	private void merge(int[] source, int[] target, int left, int middle, int right) {
+		int i = left;
+		int j = middle;
+		for (int k = left; k < right; k++) {
+			if (i < middle && (j >= right || compare(source[i], source[j]) <= 0)) {
+				target[k] = source[i++];
+			} else {
+				target[k] = source[j++];
+			}
+		}
+	}
+
+	/**
+	 * Sorts rows by long keys.
+	 */
+	static class LongKeys extends IndexSort {
+		private final long[] keys;
+
+		LongKeys(long[] keys) {
+			this.keys = keys;
+		}
+
+		@Override
+		int compare(int a, int b) {
+			return keys[a] < keys[b] ? -1 : keys[a] == keys[b] ? 0 : 1;
+		}
+	}
+
+	/**
+	 * Sorts rows by double keys, in the same order as Hive sorts doubles.
+	 */
+	static class DoubleKeys extends IndexSort {
+		private final double[] keys;
+
+		DoubleKeys(double[] keys) {
+			this.keys = keys;
+		}
+
+		@Override
+		int compare(int a, int b) {
+			return Double.compare(keys[a], keys[b]);
+		}
+	}
+
+}
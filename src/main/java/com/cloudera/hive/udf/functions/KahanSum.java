@@ -0,0 +1,35 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+
+/**
+ * This UDAF sums a numeric column as {@link Sum} does, but sums floating point values with Kahan compensation.
+ * It is a little slower, and its error does not grow with the number of values.
+ */
+@Description(name = "kahan_sum", value = "_FUNC_(x) - Returns the sum of a set of numbers, with compensated summation of floating point values")
+public class KahanSum extends Sum {
+
+	@Override
+	protected boolean isCompensated() {
+		return true;
+	}
+
+}
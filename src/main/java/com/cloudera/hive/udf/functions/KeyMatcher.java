@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.io.Text;
+
+import java.util.Arrays;
+
+/**
+ * Maps the UTF-8 bytes of a candidate key to the return column of the matching key name.
+ * <p>
+ * The key names are held in an open addressing hash table, so a lookup costs one hash of the candidate and,
+ * almost always, a single comparison, however many key names there are. Duplicate key names share a single
+ * entry: a match returns the first return column with that key name, and {@link #getNextDuplicate(int)}
+ * chains it to the other return columns with the same name, so setting them all costs nothing for unique
+ * names. The table is built once for constant key names; dynamic key names are recompiled into the same
+ * buffers, but only when they differ from the previous row's.
+ */
+class KeyMatcher {
+    private final int numKeys;
+    private final Text[] keyNames;
+    private final int[] hashes;   // Hash of each key name
+    private final int[] nextDuplicate;  // The next return column with the same key name, or -1
+    private final int[] lastDuplicate;  // For a first occurrence, the last column in its chain, while compiling
+    private final int[] table;    // Open addressing table of first occurrence + 1, 0 marks an empty slot
+    private final int mask;
+    private int uniqueKeyCount;
+    private boolean compiled = false;
+
+    /**
+     * @param numKeys the number of key names, and so of return columns
+     */
+    KeyMatcher(final int numKeys) {
+        this.numKeys = numKeys;
+        this.keyNames = new Text[numKeys];
+        this.hashes = new int[numKeys];
+        this.nextDuplicate = new int[numKeys];
+        this.lastDuplicate = new int[numKeys];
+        for (int i = 0; i < numKeys; i++) {
+            keyNames[i] = new Text();
+        }
+        int capacity = 2;
+        while (capacity < numKeys * 2) { // Keep the load factor at or under a half
+            capacity <<= 1;
+        }
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Compiles the key names into the matcher. The key names are copied, so the arguments may be reused.
+     *
+     * @param names the key names, none of which may be null
+     */
+    void compile(final Text[] names) {
+        if (compiled && sameKeyNames(names)) {
+            return;
+        }
+        Arrays.fill(table, 0);
+        uniqueKeyCount = 0;
+        for (int i = 0; i < numKeys; i++) {
+            keyNames[i].set(names[i]);
+            final int hash = hash(keyNames[i].getBytes(), 0, keyNames[i].getLength());
+            hashes[i] = hash;
+            nextDuplicate[i] = -1;
+            int slot = hash & mask;
+            while (true) {
+                final int entry = table[slot];
+                if (entry == 0) {
+                    table[slot] = i + 1;
+                    lastDuplicate[i] = i;
+                    uniqueKeyCount++;
+                    break;
+                }
+                final int column = entry - 1;
+                if (hashes[column] == hash && keyNames[column].equals(keyNames[i])) {
+                    nextDuplicate[lastDuplicate[column]] = i;
+                    lastDuplicate[column] = i;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        compiled = true;
+    }
+
+    /**
+     * @return true if the names are the ones already compiled
+     */
+    private boolean sameKeyNames(final Text[] names) {
+        for (int i = 0; i < numKeys; i++) {
+            if (!keyNames[i].equals(names[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks up a candidate key.
+     *
+     * @param bytes  the bytes holding the key
+     * @param start  the start of the key
+     * @param length the length of the key
+     * @return the first return column for the key, or -1 if it is not one of the key names
+     */
+    int match(final byte[] bytes, final int start, final int length) {
+        final int hash = hash(bytes, start, length);
+        int slot = hash & mask;
+        while (true) {
+            final int entry = table[slot];
+            if (entry == 0) {
+                return -1;
+            }
+            final int column = entry - 1;
+            if (hashes[column] == hash
+                    && KeyValueScanner.equals(bytes, start, length, keyNames[column].getBytes(), 0, keyNames[column].getLength())) {
+                return column;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * @param column a return column
+     * @return the next return column with the same key name, or -1 if there is none
+     */
+    int getNextDuplicate(final int column) {
+        return nextDuplicate[column];
+    }
+
+    /**
+     * @return the number of distinct key names
+     */
+    int getUniqueKeyCount() {
+        return uniqueKeyCount;
+    }
+
+    /**
+     * Hashes a range of bytes, spreading the high bits into the low bits used to pick a slot.
+     */
+    private static int hash(final byte[] bytes, final int start, final int length) {
+        int hash = 1;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Scans the UTF-8 bytes of a delimited key value string one pair at a time, without decoding it.</br>
+ * Pieces between field delimiters that are empty, that do not contain the key value separator or that
+ * have an empty key are skipped, which matches the rules of {@link ParseKeyValueTuple}.
+ * <p>
+ * Note: The key is everything before the first occurrence of the separator and the value is everything after.</br>
+ * Note: UTF-8 is self-synchronizing, so searching for the encoded delimiter bytes finds exactly the same
+ * positions as searching the decoded string would.
+ */
+class KeyValueScanner {
+    private byte[] bytes;
+    private int length;
+    private byte[] delimiter;
+    private int delimiterLength;
+    private byte[] separator;
+    private int separatorLength;
+    private int position;
+
+    private int keyStart;
+    private int keyLength;
+    private int valueStart;
+    private int valueLength;
+
+    /**
+     * Starts scanning a new input string.
+     *
+     * @param input           the string to be scanned
+     * @param fieldDelimiter  separator between KeyValue pairs, must not be empty
+     * @param keyValSeparator separator between key and value, must not be empty
+     */
+    void reset(final Text input, final Text fieldDelimiter, final Text keyValSeparator) {
+        reset(input.getBytes(), input.getLength(),
+                fieldDelimiter.getBytes(), fieldDelimiter.getLength(),
+                keyValSeparator.getBytes(), keyValSeparator.getLength());
+    }
+
+    /**
+     * Starts scanning a new input string. The arrays are referenced, not copied.
+     */
+    void reset(final byte[] input, final int inputLength,
+               final byte[] fieldDelimiter, final int fieldDelimiterLength,
+               final byte[] keyValSeparator, final int keyValSeparatorLength) {
+        this.bytes = input;
+        this.length = inputLength;
+        this.delimiter = fieldDelimiter;
+        this.delimiterLength = fieldDelimiterLength;
+        this.separator = keyValSeparator;
+        this.separatorLength = keyValSeparatorLength;
+        this.position = 0;
+    }
+
+    /**
+     * Advances to the next valid pair.
+     *
+     * @return false when there are no pairs left
+     */
+    boolean next() {
+        while (position < length) {
+            final int start = position;
+            int end = indexOf(bytes, start, length, delimiter, delimiterLength);
+            if (end < 0) {
+                end = length;
+                position = length;
+            } else {
+                position = end + delimiterLength;
+            }
+            final int separatorAt = end > start ? indexOf(bytes, start, end, separator, separatorLength) : -1;
+            if (separatorAt > start) {
+                keyStart = start;
+                keyLength = separatorAt - start;
+                valueStart = separatorAt + separatorLength;
+                valueLength = end - valueStart;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    byte[] getBytes() {
+        return bytes;
+    }
+
+    int getKeyStart() {
+        return keyStart;
+    }
+
+    int getKeyLength() {
+        return keyLength;
+    }
+
+    int getValueStart() {
+        return valueStart;
+    }
+
+    int getValueLength() {
+        return valueLength;
+    }
+
+    /**
+     * Finds the first occurrence of pattern within bytes[from, to).
+     *
+     * @return the index of the first occurrence, or -1 when there is none
+     */
+    static int indexOf(final byte[] bytes, final int from, final int to, final byte[] pattern, final int patternLength) {
+        final byte first = pattern[0];
+        final int last = to - patternLength;
+        outer:
+        for (int i = from; i <= last; i++) {
+            if (bytes[i] != first) {
+                continue;
+            }
+            for (int j = 1; j < patternLength; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if the two byte ranges hold the same bytes
+     */
+    static boolean equals(final byte[] a, final int aStart, final int aLength, final byte[] b, final int bStart, final int bLength) {
+        if (aLength != bLength) {
+            return false;
+        }
+        for (int i = 0; i < aLength; i++) {
+            if (a[aStart + i] != b[bStart + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+
+/**
+ * This UDF provides a lag() function.
+ * <p>
+ * The last k values of the partition are held in a ring buffer that is allocated once, so memory is bounded by k
+ * rather than by the size of the partition.
+ */
+@Description(name = "lag", value = "_FUNC_(value, k, optional partition columns ...) - Returns the value from k rows before the current row within a partitioned, sorted window, or null.")
+@UDFType(deterministic = false, stateful = true)
+public class Lag extends PartitionedGenericUDF {
+
+	private PrimitiveObjectInspector offsetOI;
+	private Object[] ring;
+	private int next;	// The slot the current row's value goes into
+	private long rows;	// Rows seen so far in the partition
+
+	@Override
+	protected ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException {
+		offsetOI = checkOffset(ois, "lag");
+		ring = null;
+		return ObjectInspectorUtils.getStandardObjectInspector(ois[0]);
+	}
+
+	/**
+	 * Checks that the second argument is an integer offset.
+	 *
+	 * @return the ObjectInspector of the offset
+	 * @throws UDFArgumentException
+	 */
+	static PrimitiveObjectInspector checkOffset(ObjectInspector[] ois, String name) throws UDFArgumentException {
+		if (ois.length < 2 || ois[1].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			throw new UDFArgumentException(name + " takes a value, an integer offset k and optional partition columns");
+		}
+		PrimitiveObjectInspector offsetOI = (PrimitiveObjectInspector) ois[1];
+		switch (offsetOI.getPrimitiveCategory()) {
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+			return offsetOI;
+		default:
+			throw new UDFArgumentException(name + "'s offset k must be an integer, but " + offsetOI.getTypeName() + " was passed");
+		}
+	}
+
+	/**
+	 * Reads the offset k, which has to be the same for every row.
+	 *
+	 * @throws HiveException
+	 */
+	static int readOffset(Object offset, PrimitiveObjectInspector offsetOI) throws HiveException {
+		if (offset == null) {
+			throw new HiveException("The offset k must not be null");
+		}
+		int k = PrimitiveObjectInspectorUtils.getInt(offset, offsetOI);
+		if (k < 0) {
+			throw new HiveException("The offset k must not be negative, but was " + k);
+		}
+		return k;
+	}
+
+	@Override
+	protected int getFirstPartitionColumn() {
+		return 2;
+	}
+
+	/**
+	 * This expects multiple parameters: the value, the offset k, then the PARTITION BY columns.
+	 */
+	@Override
+	public Object evaluate(DeferredObject[] current) throws HiveException {
+		if (ring == null) {
+			ring = new Object[readOffset(current[1].get(), offsetOI) + 1];
+		}
+		if (partitionChanged(current)) {
+			rows = 0;
+		}
+		ring[next] = ObjectInspectorUtils.copyToStandardObject(current[0].get(), this.ois[0]);
+		int k = ring.length - 1;
+		// The slot after the current one was written k rows ago
+		Object result = rows >= k ? ring[(next + 1) % ring.length] : null;
+		next = (next + 1) % ring.length;
+		++rows;
+		return result;
+	}
+
+	@Override
+	public String getDisplayString(String[] currentKey) {
+		return "Lag";
+	}
+
+}
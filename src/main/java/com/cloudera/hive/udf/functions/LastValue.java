@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+
+/**
+ * This UDTF provides a last_value() function, the counterpart of {@link FirstValue}.
+ */
+@Description(name = "last_value", value = "_FUNC_(value, optional partition columns ...) - Forwards each row of a partitioned, sorted window with the last value of the window.")
+public class LastValue extends BufferedPartitionUDTF {
+
+	private Object value;
+
+	@Override
+	protected ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException {
+		// The value we hand back is always a standard copy of the replayed value
+		return ObjectInspectorUtils.getStandardObjectInspector(getStoredInspector(0));
+	}
+
+	@Override
+	protected void partitionComplete(long rows) throws HiveException {
+		value = ObjectInspectorUtils.copyToStandardObject(getLastRow().get(0), getStoredInspector(0));
+	}
+
+	@Override
+	protected Object result(long row, long rows) {
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return "last_value";
+	}
+
+}
@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.ArrayList;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDTF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+
+/**
+ * This UDTF provides a lead() function.
+ * <p>
+ * A UDF cannot see the rows that follow the current one, so lead is a table function instead: each row is held
+ * back until k more rows of its partition have been seen, then forwarded with the value of the k-th of them.
+ * Rows still held back when the partition changes are forwarded with a null lead. At most k + 1 rows are
+ * buffered, in slots that are allocated once and reused.
+ * <p>
+ * The output columns are the value, the partition columns and finally the lead value. To carry more columns
+ * through, pass a struct as the value.
+ */
+@Description(name = "lead", value = "_FUNC_(value, k, optional partition columns ...) - Forwards each row of a partitioned, sorted window with the value from k rows after it, or null.")
+public class Lead extends GenericUDTF {
+
+	private ObjectInspector[] ois;
+	private PrimitiveObjectInspector offsetOI;
+	private GroupKey partition;
+	private Object[][] ring;	// k + 1 buffered rows, each holding the value and the partition columns
+	private int head;			// The oldest buffered row
+	private int size;			// The number of buffered rows
+	private Object[] output;
+
+	@Override
+	public StructObjectInspector initialize(ObjectInspector[] ois) throws UDFArgumentException {
+		offsetOI = Lag.checkOffset(ois, "lead");
+		this.ois = ois;
+		partition = GroupKey.forColumns(ois, 2, ois.length);
+		ring = null;
+		head = 0;
+		size = 0;
+		output = new Object[ois.length];
+
+		ArrayList<String> fieldNames = new ArrayList<String>(ois.length);
+		ArrayList<ObjectInspector> fieldOIs = new ArrayList<ObjectInspector>(ois.length);
+		fieldNames.add("value");
+		fieldOIs.add(ObjectInspectorUtils.getStandardObjectInspector(ois[0]));
+		for (int index = 2; index < ois.length; index++) {
+			fieldNames.add("partition" + (index - 1));
+			fieldOIs.add(ObjectInspectorUtils.getStandardObjectInspector(ois[index]));
+		}
+		fieldNames.add("lead");
+		fieldOIs.add(ObjectInspectorUtils.getStandardObjectInspector(ois[0]));
+		return ObjectInspectorFactory.getStandardStructObjectInspector(fieldNames, fieldOIs);
+	}
+
+	/**
+	 * This expects multiple parameters: the value, the offset k, then the PARTITION BY columns.
+	 */
+	@Override
+	public void process(Object[] current) throws HiveException {
+		if (ring == null) {
+			int k = Lag.readOffset(current[1], offsetOI);
+			ring = new Object[k + 1][ois.length - 1];
+		}
+		if (partition.update(current)) {
+			flush();
+		}
+		Object[] row = ring[(head + size) % ring.length];
+		row[0] = ObjectInspectorUtils.copyToStandardObject(current[0], ois[0]);
+		for (int index = 2; index < ois.length; index++) {
+			row[index - 1] = ObjectInspectorUtils.copyToStandardObject(current[index], ois[index]);
+		}
+		if (++size == ring.length) {
+			forwardOldest(row[0]);
+		}
+	}
+
+	private void forwardOldest(Object lead) throws HiveException {
+		Object[] row = ring[head];
+		System.arraycopy(row, 0, output, 0, row.length);
+		output[row.length] = lead;
+		forward(output);
+		head = (head + 1) % ring.length;
+		--size;
+	}
+
+	/**
+	 * Forwards the rows that are left over at the end of a partition, which have nothing to lead to.
+	 */
+	private void flush() throws HiveException {
+		while (size > 0) {
+			forwardOldest(null);
+		}
+	}
+
+	@Override
+	public void close() throws HiveException {
+		if (ring != null) {
+			flush();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "lead";
+	}
+
+}
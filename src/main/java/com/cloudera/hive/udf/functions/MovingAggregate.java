@@ -0,0 +1,184 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Common base for the moving aggregates over a partitioned, sorted stream of rows.
+ * <p>
+ * By default the window is the current row and the rows before it, up to n rows in all, and the arguments are
+ * (value, n, partition columns ...). Range variants instead take (value, time, range, partition columns ...) and
+ * the window is every row whose time is within range of the current row's time, exclusive; the rows must be sorted
+ * by time within each partition. Timestamps are read as seconds, so the range of a timestamp is given in seconds.
+ * <p>
+ * Null values take up room in the window but are skipped by the aggregate, and the result is null while the window
+ * holds no value. The window is emptied whenever the partition changes.
+ */
+public abstract class MovingAggregate extends PartitionedGenericUDF {
+
+	private PrimitiveObjectInspector valueOI;
+	private PrimitiveObjectInspector timeOI;
+	private PrimitiveObjectInspector sizeOI;
+	protected boolean integral;
+	protected MovingWindow window;
+	private long size;	// Rows in the window, or the time range
+	protected final LongWritable longResult = new LongWritable();
+	protected final DoubleWritable doubleResult = new DoubleWritable();
+
+	@Override
+	protected ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException {
+		String name = getDisplayString(new String[0]);
+		integral = RunningAggregate.isIntegral(ois[0], name);
+		valueOI = (PrimitiveObjectInspector) ois[0];
+		int sizeColumn = getFirstPartitionColumn() - 1;
+		if (ois.length <= sizeColumn) {
+			throw new UDFArgumentException(name + " takes a value, " + (isRange() ? "a time, a range" : "a number of rows")
+					+ " and optional partition columns");
+		}
+		if (isRange()) {
+			timeOI = checkIntegral(ois[1], name, "time", true);
+		}
+		sizeOI = checkIntegral(ois[sizeColumn], name, isRange() ? "range" : "number of rows", false);
+		window = null;
+		return integral && !isAlwaysDouble()
+				? PrimitiveObjectInspectorFactory.writableLongObjectInspector
+				: PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+	}
+
+	/**
+	 * Checks that an argument is an integer, or optionally a timestamp.
+	 *
+	 * @return the ObjectInspector of the argument
+	 * @throws UDFArgumentException
+	 */
+	static PrimitiveObjectInspector checkIntegral(ObjectInspector oi, String name, String argument, boolean allowTimestamp) throws UDFArgumentException {
+		if (oi.getCategory() == ObjectInspector.Category.PRIMITIVE) {
+			PrimitiveObjectInspector poi = (PrimitiveObjectInspector) oi;
+			switch (poi.getPrimitiveCategory()) {
+			case BYTE:
+			case SHORT:
+			case INT:
+			case LONG:
+				return poi;
+			case TIMESTAMP:
+				if (allowTimestamp) {
+					return poi;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		throw new UDFArgumentException(name + "'s " + argument + " must be an integer, but " + oi.getTypeName() + " was passed");
+	}
+
+	@Override
+	protected int getFirstPartitionColumn() {
+		return isRange() ? 3 : 2;
+	}
+
+	/**
+	 * This expects multiple parameters: the value, the window size, then the PARTITION BY columns. Range variants
+	 * take the time of the row before the window size.
+	 */
+	@Override
+	public Object evaluate(DeferredObject[] current) throws HiveException {
+		if (window == null) {
+			createWindow(current[getFirstPartitionColumn() - 1].get());
+		}
+		if (partitionChanged(current)) {
+			window.clear();
+		}
+		long time = 0;
+		if (isRange()) {
+			Object t = current[1].get();
+			if (t == null) {
+				// A row without a time belongs to no window
+				return null;
+			}
+			time = PrimitiveObjectInspectorUtils.getLong(t, timeOI);
+			while (window.size() > 0 && window.getFirstTime() <= time - size) {
+				window.removeFirst();
+			}
+		} else if (window.isFull()) {
+			window.removeFirst();
+		}
+		Object value = current[0].get();
+		if (value == null) {
+			window.addNull(time);
+		} else if (integral) {
+			window.addLong(PrimitiveObjectInspectorUtils.getLong(value, valueOI), time);
+		} else {
+			window.addDouble(PrimitiveObjectInspectorUtils.getDouble(value, valueOI), time);
+		}
+		return window.getCount() == 0 ? null : result();
+	}
+
+	/**
+	 * Reads the window size, which has to be the same for every row, and creates the window.
+	 *
+	 * @throws HiveException
+	 */
+	private void createWindow(Object sizeObject) throws HiveException {
+		if (sizeObject == null) {
+			throw new HiveException("The window size must not be null");
+		}
+		size = PrimitiveObjectInspectorUtils.getLong(sizeObject, sizeOI);
+		if (size < 1 || (!isRange() && size > Integer.MAX_VALUE)) {
+			throw new HiveException("The window size must be a positive integer, but was " + size);
+		}
+		// The buffers grow with the partitions, so a large number of rows is not allocated up front
+		window = new MovingWindow(integral, getExtreme(), isRange() ? Long.MAX_VALUE : size);
+	}
+
+	/**
+	 * @return true if the window is a time range, rather than a number of rows
+	 */
+	protected boolean isRange() {
+		return false;
+	}
+
+	/**
+	 * @return true if the result is a double even for integer values
+	 */
+	protected boolean isAlwaysDouble() {
+		return false;
+	}
+
+	/**
+	 * @return the extreme that the window has to track, if any
+	 */
+	protected int getExtreme() {
+		return MovingWindow.NONE;
+	}
+
+	/**
+	 * @return the aggregate of the window, in {@link #longResult} or {@link #doubleResult}
+	 */
+	protected abstract Object result();
+
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+
+/**
+ * This UDF provides a moving_max_range() function.
+ */
+@Description(name = "moving_max_range", value = "_FUNC_(value, time, range, optional partition columns ...) - Returns the largest of the values within range of the current row's time, within a partitioned, sorted window.")
+@UDFType(deterministic = false, stateful = true)
+public class MovingMaxRange extends MovingMax {
+
+	@Override
+	protected boolean isRange() {
+		return true;
+	}
+
+	@Override
+	public String getDisplayString(String[] currentKey) {
+		return "MovingMaxRange";
+	}
+
+}
@@ -0,0 +1,323 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+/**
+ * The rows of a sliding window, held in primitive ring buffers.
+ * <p>
+ * Rows are numbered in the order they are added, and row n lives in slot n % capacity of the buffers. The buffers
+ * start small and double as rows are added, up to the maximum number of rows, so a large window only costs memory
+ * if the partitions are large. The sum and the number of non-null values are updated as rows enter and leave the
+ * window. For min / max, a monotonic deque of row numbers is kept, whose front is always the row holding the
+ * extreme value, so every row costs O(1) amortized whatever the size of the window.
+ * <p>
+ * Double sums are compensated, and recomputed from the buffers whenever as many rows have left the window as it can
+ * hold, so rounding errors cannot build up over a long partition. NaN and infinite values are counted apart from
+ * the sum, so they only affect it while they are in the window.
+ */
+class MovingWindow {
+
+	static final int NONE = 0;
+	static final int MIN = -1;
+	static final int MAX = 1;
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final boolean integral;
+	private final int extreme;
+	private final long limit;
+
+	private int capacity;
+	private long[] longs;
+	private double[] doubles;
+	private long[] times;
+	private boolean[] present;
+	private long[] deque;	// Row numbers, in the same kind of ring as the rows
+
+	private long first;		// The oldest row in the window
+	private long end;		// The row after the newest one
+	private long dequeFirst;
+	private long dequeEnd;
+
+	private long count;		// Non-null values in the window
+	private long longSum;
+	private double doubleSum;
+	private double compensation;	// The low order bits lost from doubleSum
+	private long nans;				// Non-finite values in the window, which are kept out of doubleSum
+	private long positiveInfinities;
+	private long negativeInfinities;
+	private long removals;			// Values removed from doubleSum since it was last recomputed
+
+	/**
+	 * @param integral - true to hold long values, false to hold double values
+	 * @param extreme - {@link #MIN} or {@link #MAX} to track that extreme, or {@link #NONE}
+	 * @param limit - the maximum number of rows in the window
+	 */
+	MovingWindow(boolean integral, int extreme, long limit) {
+		this.integral = integral;
+		this.extreme = extreme;
+		this.limit = limit;
+		allocate((int) Math.min(limit, INITIAL_CAPACITY));
+	}
+
+	private void allocate(int capacity) {
+		this.capacity = capacity;
+		if (integral) {
+			longs = new long[capacity];
+		} else {
+			doubles = new double[capacity];
+		}
+		times = new long[capacity];
+		present = new boolean[capacity];
+		if (extreme != NONE) {
+			deque = new long[capacity];
+		}
+	}
+
+	/**
+	 * Empties the window, keeping the buffers.
+	 */
+	void clear() {
+		first = end = 0;
+		dequeFirst = dequeEnd = 0;
+		count = 0;
+		longSum = 0;
+		doubleSum = 0;
+		compensation = 0;
+		nans = positiveInfinities = negativeInfinities = 0;
+		removals = 0;
+	}
+
+	int size() {
+		return (int) (end - first);
+	}
+
+	/**
+	 * @return true if the window holds the maximum number of rows
+	 */
+	boolean isFull() {
+		return size() == limit;
+	}
+
+	long getCount() {
+		return count;
+	}
+
+	long getLongSum() {
+		return longSum;
+	}
+
+	double getDoubleSum() {
+		if (nans > 0 || (positiveInfinities > 0 && negativeInfinities > 0)) {
+			return Double.NaN;
+		}
+		if (positiveInfinities > 0) {
+			return Double.POSITIVE_INFINITY;
+		}
+		if (negativeInfinities > 0) {
+			return Double.NEGATIVE_INFINITY;
+		}
+		return doubleSum + compensation;
+	}
+
+	/**
+	 * @return the time of the oldest row. Only valid when the window is not empty.
+	 */
+	long getFirstTime() {
+		return times[slot(first)];
+	}
+
+	/**
+	 * @return the extreme value. Only valid when the window holds a non-null value.
+	 */
+	long getLongExtreme() {
+		return longs[slot(deque[slot(dequeFirst)])];
+	}
+
+	/**
+	 * @return the extreme value. Only valid when the window holds a non-null value.
+	 */
+	double getDoubleExtreme() {
+		return doubles[slot(deque[slot(dequeFirst)])];
+	}
+
+	void addLong(long value, long time) {
+		int slot = append(time, true);
+		longs[slot] = value;
+		longSum += value;
+		if (extreme != NONE) {
+			while (dequeEnd > dequeFirst) {
+				long last = longs[slot(deque[slot(dequeEnd - 1)])];
+				if (extreme == MIN ? last < value : last > value) {
+					break;
+				}
+				--dequeEnd;
+			}
+			deque[slot(dequeEnd++)] = end - 1;
+		}
+	}
+
+	void addDouble(double value, long time) {
+		int slot = append(time, true);
+		doubles[slot] = value;
+		if (Double.isNaN(value)) {
+			++nans;
+		} else if (Double.isInfinite(value)) {
+			if (value > 0) {
+				++positiveInfinities;
+			} else {
+				++negativeInfinities;
+			}
+		} else {
+			addToSum(value);
+		}
+		if (extreme != NONE) {
+			while (dequeEnd > dequeFirst) {
+				double last = doubles[slot(deque[slot(dequeEnd - 1)])];
+				if (extreme == MIN ? last < value : last > value) {
+					break;
+				}
+				--dequeEnd;
+			}
+			deque[slot(dequeEnd++)] = end - 1;
+		}
+	}
+
+	/**
+	 * Adds a row with a null value, which takes up room in the window but does not count towards it.
+	 */
+	void addNull(long time) {
+		append(time, false);
+	}
+
+	/**
+	 * Drops the oldest row from the window. Only valid when the window is not empty.
+	 */
+	void removeFirst() {
+		int slot = slot(first);
+		if (present[slot]) {
+			--count;
+			if (integral) {
+				longSum -= longs[slot];
+			} else {
+				removeDouble(doubles[slot]);
+			}
+			if (extreme != NONE && deque[slot(dequeFirst)] == first) {
+				++dequeFirst;
+			}
+		}
+		++first;
+		if (!integral && removals >= capacity) {
+			recomputeSum();
+		}
+	}
+
+	private void removeDouble(double value) {
+		if (Double.isNaN(value)) {
+			--nans;
+		} else if (Double.isInfinite(value)) {
+			if (value > 0) {
+				--positiveInfinities;
+			} else {
+				--negativeInfinities;
+			}
+		} else {
+			addToSum(-value);
+			++removals;
+		}
+	}
+
+	/**
+	 * Adds to the sum with Neumaier's compensated summation.
+	 */
+	private void addToSum(double value) {
+		double sum = doubleSum + value;
+		if (Math.abs(doubleSum) >= Math.abs(value)) {
+			compensation += (doubleSum - sum) + value;
+		} else {
+			compensation += (value - sum) + doubleSum;
+		}
+		doubleSum = sum;
+	}
+
+	/**
+	 * Sums the finite values in the window afresh, which costs O(1) amortized over the removals since the last time.
+	 */
+	private void recomputeSum() {
+		doubleSum = 0;
+		compensation = 0;
+		removals = 0;
+		for (long row = first; row < end; row++) {
+			int slot = slot(row);
+			if (present[slot] && !Double.isNaN(doubles[slot]) && !Double.isInfinite(doubles[slot])) {
+				addToSum(doubles[slot]);
+			}
+		}
+	}
+
+	private int append(long time, boolean isPresent) {
+		if (isFull()) {
+			throw new IllegalStateException("The window is full");
+		}
+		if (size() == capacity) {
+			grow();
+		}
+		int slot = slot(end++);
+		times[slot] = time;
+		present[slot] = isPresent;
+		if (isPresent) {
+			++count;
+		}
+		return slot;
+	}
+
+	/**
+	 * Doubles the buffers, up to the limit, moving every row and deque entry to its slot in the new ring.
+	 */
+	private void grow() {
+		int oldCapacity = capacity;
+		long[] oldLongs = longs;
+		double[] oldDoubles = doubles;
+		long[] oldTimes = times;
+		boolean[] oldPresent = present;
+		long[] oldDeque = deque;
+		allocate((int) Math.min(limit, Math.min(2L * oldCapacity, Integer.MAX_VALUE)));
+		for (long row = first; row < end; row++) {
+			int from = (int) (row % oldCapacity);
+			int to = slot(row);
+			if (integral) {
+				longs[to] = oldLongs[from];
+			} else {
+				doubles[to] = oldDoubles[from];
+			}
+			times[to] = oldTimes[from];
+			present[to] = oldPresent[from];
+		}
+		if (extreme != NONE) {
+			for (long entry = dequeFirst; entry < dequeEnd; entry++) {
+				deque[slot(entry)] = oldDeque[(int) (entry % oldCapacity)];
+			}
+		}
+	}
+
+	private int slot(long row) {
+		return (int) (row % capacity);
+	}
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.io.IntWritable;
+
+/**
+ * This UDTF provides an ntile() function.
+ * <p>
+ * The rows of each partition are split into n buckets, in order, whose sizes differ by at most one. The larger
+ * buckets come first.
+ */
+@Description(name = "ntile", value = "_FUNC_(n, value, optional partition columns ...) - Forwards each row of a partitioned, sorted window with the number of its bucket, from 1 to n.")
+public class NTile extends BufferedPartitionUDTF {
+
+	private PrimitiveObjectInspector bucketsOI;
+	private long buckets;
+	private long small;			// Rows in a smaller bucket
+	private long largeRows;		// Rows in all of the larger buckets
+	private long largeBuckets;
+	private final IntWritable result = new IntWritable();
+
+	@Override
+	protected ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException {
+		if (ois[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			throw new UDFArgumentException("ntile's number of buckets must be an integer, but " + ois[0].getTypeName() + " was passed");
+		}
+		bucketsOI = (PrimitiveObjectInspector) ois[0];
+		switch (bucketsOI.getPrimitiveCategory()) {
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+			break;
+		default:
+			throw new UDFArgumentException("ntile's number of buckets must be an integer, but " + ois[0].getTypeName() + " was passed");
+		}
+		buckets = 0;
+		return PrimitiveObjectInspectorFactory.writableIntObjectInspector;
+	}
+
+	@Override
+	protected String getArgumentDescription() {
+		return "a number of buckets n, a value and optional partition columns";
+	}
+
+	@Override
+	protected int getFirstStoredColumn() {
+		return 1;
+	}
+
+	@Override
+	protected void buffered(Object[] arguments, long row) throws HiveException {
+		if (buckets == 0) {
+			if (arguments[0] == null) {
+				throw new HiveException("The number of buckets must not be null");
+			}
+			buckets = PrimitiveObjectInspectorUtils.getLong(arguments[0], bucketsOI);
+			if (buckets < 1 || buckets > Integer.MAX_VALUE) {
+				throw new HiveException("The number of buckets must be a positive integer, but was " + buckets);
+			}
+		}
+	}
+
+	@Override
+	protected void partitionComplete(long rows) {
+		small = rows / buckets;
+		largeBuckets = rows % buckets;
+		largeRows = largeBuckets * (small + 1);
+	}
+
+	@Override
+	protected Object result(long row, long rows) {
+		if (row < largeRows) {
+			result.set((int) (row / (small + 1) + 1));
+		} else {
+			result.set((int) (largeBuckets + (row - largeRows) / small + 1));
+		}
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "ntile";
+	}
+
+}
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+
+/**
+ * A {@link GroupKey} that keeps standard object copies of the previous key columns.
+ * <p>
+ * The standard ObjectInspectors for the tracked columns are resolved once, when the key is created, and
+ * the previous values are held in a buffer that is reused for the lifetime of the UDF. A copy of the
+ * current row is only taken when the key actually changes.
+ */
+class ObjectGroupKey extends GroupKey {
+
+	private final ObjectInspector[] ois;
+	private final ObjectInspector[] standardOIs;
+	private final int first;
+	private final Object[] current;
+	private final Object[] previous;
+	private boolean empty = true;
+
+	/**
+	 * @param ois - the ObjectInspectors of all of the UDF arguments
+	 * @param first - the index of the first argument that makes up the key
+	 * @param last - the index after the last argument that makes up the key
+	 */
+	ObjectGroupKey(ObjectInspector[] ois, int first, int last) {
+		int width = Math.max(0, last - first);
+		this.ois = new ObjectInspector[width];
+		this.standardOIs = new ObjectInspector[width];
+		this.first = first;
+		this.current = new Object[width];
+		this.previous = new Object[width];
+		for (int index = 0; index < width; index++) {
+			this.ois[index] = ois[first + index];
+			this.standardOIs[index] = ObjectInspectorUtils.getStandardObjectInspector(ois[first + index]);
+		}
+	}
+
+	@Override
+	boolean update(DeferredObject[] arguments) throws HiveException {
+		for (int index = 0; index < current.length; index++) {
+			current[index] = arguments[first + index].get();
+		}
+		return updateFromCurrent();
+	}
+
+	@Override
+	boolean update(Object[] arguments) {
+		for (int index = 0; index < current.length; index++) {
+			current[index] = arguments[first + index];
+		}
+		return updateFromCurrent();
+	}
+
+	private boolean updateFromCurrent() {
+		if (!empty && sameAsPrevious()) {
+			return false;
+		}
+		for (int index = 0; index < current.length; index++) {
+			previous[index] = ObjectInspectorUtils.copyToStandardObject(current[index], ois[index]);
+			current[index] = null;
+		}
+		empty = false;
+		return true;
+	}
+
+	@Override
+	void reset() {
+		for (int index = 0; index < previous.length; index++) {
+			previous[index] = null;
+		}
+		empty = true;
+	}
+
+	private boolean sameAsPrevious() {
+		for (int index = 0; index < current.length; index++) {
+			if (ObjectInspectorUtils.compare(current[index], ois[index], previous[index], standardOIs[index]) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDTF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+
+/**
+ * This UDTF explodes a string of delimited key value pairs into one (key, value) row per pair.</br>
+ * It follows the same rules as {@link ParseKeyValueTuple}: empty pieces, pieces without a separator and pieces
+ * with an empty key are skipped, and the key is everything before the first separator.
+ * <P>
+ * Pairs are forwarded as they are found, through a single reused row, so memory use does not depend on the
+ * number of pairs in the string. Every occurrence of a duplicate key is forwarded.
+ * <P>
+ * Example Query:</br>
+ *  "SELECT t.key, count(*) FROM src LATERAL VIEW _FUNC_(inputString, '&', '=') t AS key, value GROUP BY t.key;"
+ *
+ *  @see org.apache.hadoop.hive.ql.udf.generic.GenericUDTF
+ */
+@Description(name = "parse_key_val_explode",
+        value = "_FUNC_(inputString, fieldDelimiter, keyValSeparator) - explodes a delimited key value String into (key, value) rows.\n"
+                + "All the input parameters and output column types are string.",
+        extended = "Note: A null or empty inputString produces no rows.\n"
+                + "Note: Delimiter and separator characters such as ';' may need to be escaped\n"
+                + "Example:\n"
+                + "  > SELECT t.* FROM src LATERAL VIEW _FUNC_('a=1&b=2', '&', '=') t AS key, value;\n"
+                + "  a\t1\n"
+                + "  b\t2")
+public class ParseKeyValueExplode extends GenericUDTF {
+    private static final String FUNCTION_NAME = "parse_key_val_explode";
+    private static final int ARG_COUNT = 3;
+    private static final String REQUIRED_TYPE = "string";
+
+    private transient StringObjectInspector[] inputOIs; // Input ObjectInspectors
+    private transient KeyValueScanner scanner;
+    private transient Text key;
+    private transient Text value;
+    private transient Object[] row; // Reused output row of key and value
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Initializes the UDTF fields and builds the StructObjectInspector for the key and value columns.
+     *
+     * @param args the UDTF args
+     * @return output column StructObjectInspector
+     * @throws UDFArgumentException when the arguments are invalid
+     */
+    @Override
+    public StructObjectInspector initialize(final ObjectInspector[] args) throws UDFArgumentException {
+        if (args.length != ARG_COUNT) {
+            throw new UDFArgumentException(FUNCTION_NAME + " takes " + ARG_COUNT + " arguments: the string, fieldDelimiter and keyValSeparator");
+        }
+        inputOIs = new StringObjectInspector[args.length];
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].getCategory() != ObjectInspector.Category.PRIMITIVE || !REQUIRED_TYPE.equals(args[i].getTypeName())) {
+                throw new UDFArgumentException(FUNCTION_NAME + "'s arguments have to be " + REQUIRED_TYPE + " type");
+            }
+            inputOIs[i] = (StringObjectInspector) args[i];
+        }
+        scanner = new KeyValueScanner();
+        key = new Text();
+        value = new Text();
+        row = new Object[] {key, value};
+
+        final ArrayList<String> fieldNames = new ArrayList<String>(2);
+        final ArrayList<ObjectInspector> fieldOIs = new ArrayList<ObjectInspector>(2);
+        fieldNames.add("key");
+        fieldNames.add("value");
+        fieldOIs.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+        fieldOIs.add(PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+        return ObjectInspectorFactory.getStandardStructObjectInspector(fieldNames, fieldOIs);
+    }
+
+    /**
+     * Forwards one row for each valid pair in the input string.
+     *
+     * @param o UDTF input values
+     * @throws HiveException
+     */
+    @Override
+    public void process(final Object[] o) throws HiveException {
+        final Text inputText = getTextFromInputObjects(o, 0);
+        final Text fieldDelimiter = getTextFromInputObjects(o, 1);
+        final Text keyValSeparator = getTextFromInputObjects(o, 2);
+        if (isEmpty(inputText) || isEmpty(fieldDelimiter) || isEmpty(keyValSeparator)) {
+            return;
+        }
+        scanner.reset(inputText, fieldDelimiter, keyValSeparator);
+        while (scanner.next()) {
+            final byte[] bytes = scanner.getBytes();
+            key.set(bytes, scanner.getKeyStart(), scanner.getKeyLength());
+            value.set(bytes, scanner.getValueStart(), scanner.getValueLength());
+            forward(row);
+        }
+    }
+
+    private Text getTextFromInputObjects(final Object[] o, final int i) {
+        return o[i] == null ? null : inputOIs[i].getPrimitiveWritableObject(o[i]);
+    }
+
+    private static boolean isEmpty(final Text text) {
+        return text == null || text.getLength() == 0;
+    }
+
+    /**
+     * Returns the name of the UDTF function.
+     *
+     * @return name of the UDTF function
+     */
+    @Override
+    public String toString() {
+        return FUNCTION_NAME;
+    }
+}
@@ -0,0 +1,197 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.Text;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This UDF parses a string of delimited key value pairs into a map, in a single pass.</br>
+ * It follows the same rules as {@link ParseKeyValueTuple}: empty pieces, pieces without a separator and pieces
+ * with an empty key are skipped, the key is everything before the first separator, and the last value of a
+ * duplicate key wins.
+ * <P>
+ * The returned map and its Text keys and values are reused from row to row. Entries are only added or removed
+ * when the set of keys changes, so rows that share their keys do not create any objects.
+ * <P>
+ * Example Query:</br>
+ *  "SELECT _FUNC_(inputString, '&', '=', 'utm_')['utm_source'] FROM src LIMIT 1;"
+ *
+ *  @see org.apache.hadoop.hive.ql.udf.generic.GenericUDF
+ */
+@Description(name = "parse_key_val_map",
+        value = "_FUNC_(inputString, fieldDelimiter, keyValSeparator[, keyPrefix]) - parses a delimited key value String into a map<string,string>.\n"
+                + "When a keyPrefix is given, only the keys that start with it are returned.",
+        extended = "Note: All parameters are case-sensitive.\n"
+                + "Note: Delimiter and separator characters such as ';' may need to be escaped\n"
+                + "Example:\n"
+                + "  > SELECT _FUNC_('a=1&b=2&c=3', '&', '=') FROM src LIMIT 1;\n"
+                + "  {\"a\":\"1\",\"b\":\"2\",\"c\":\"3\"}")
+public class ParseKeyValueMap extends GenericUDF {
+    private static final String FUNCTION_NAME = "parse_key_val_map";
+    private static final int MIN_ARG_COUNT = 3;
+    private static final int MAX_ARG_COUNT = 4;
+    private static final String REQUIRED_TYPE = "string";
+
+    private transient StringObjectInspector[] inputOIs;
+    private transient KeyValueScanner scanner;
+    private transient Map<Text, PooledText> map; // The map returned for every row
+    private transient List<Text> freeKeys;         // Keys and values removed from the map, ready for reuse
+    private transient List<PooledText> freeValues;
+    private transient Text probe;                  // Holds the current key while it is looked up
+    private int generation;
+
+    /**
+     * A map value that remembers the last row it was set on.
+     */
+    private static final class PooledText extends Text {
+        private int generation;
+    }
+
+    @Override
+    public ObjectInspector initialize(final ObjectInspector[] args) throws UDFArgumentException {
+        if (args.length < MIN_ARG_COUNT || args.length > MAX_ARG_COUNT) {
+            throw new UDFArgumentException(FUNCTION_NAME + " takes " + MIN_ARG_COUNT + " or " + MAX_ARG_COUNT
+                    + " arguments: the string, fieldDelimiter, keyValSeparator, and an optional key prefix");
+        }
+        inputOIs = new StringObjectInspector[args.length];
+        for (int i = 0; i < args.length; ++i) {
+            if (args[i].getCategory() != ObjectInspector.Category.PRIMITIVE || !REQUIRED_TYPE.equals(args[i].getTypeName())) {
+                throw new UDFArgumentException(FUNCTION_NAME + "'s arguments have to be " + REQUIRED_TYPE + " type");
+            }
+            inputOIs[i] = (StringObjectInspector) args[i];
+        }
+        scanner = new KeyValueScanner();
+        map = new HashMap<Text, PooledText>();
+        freeKeys = new ArrayList<Text>();
+        freeValues = new ArrayList<PooledText>();
+        probe = new Text();
+        generation = 0;
+        return ObjectInspectorFactory.getStandardMapObjectInspector(
+                PrimitiveObjectInspectorFactory.writableStringObjectInspector,
+                PrimitiveObjectInspectorFactory.writableStringObjectInspector);
+    }
+
+    /**
+     * Parses the input string into the reused map.
+     *
+     * @return the map, or null when the input string, delimiter or separator is null, or a delimiter is empty
+     */
+    @Override
+    public Object evaluate(final DeferredObject[] arguments) throws HiveException {
+        final Text inputText = getText(arguments, 0);
+        final Text fieldDelimiter = getText(arguments, 1);
+        final Text keyValSeparator = getText(arguments, 2);
+        if (inputText == null || isEmpty(fieldDelimiter) || isEmpty(keyValSeparator)) {
+            return null;
+        }
+        final Text keyPrefix = arguments.length > MIN_ARG_COUNT ? getText(arguments, MIN_ARG_COUNT) : null;
+
+        ++generation;
+        int count = 0;
+        scanner.reset(inputText, fieldDelimiter, keyValSeparator);
+        while (scanner.next()) {
+            final byte[] bytes = scanner.getBytes();
+            final int keyStart = scanner.getKeyStart();
+            final int keyLength = scanner.getKeyLength();
+            if (keyPrefix != null && !startsWith(bytes, keyStart, keyLength, keyPrefix)) {
+                continue;
+            }
+            probe.set(bytes, keyStart, keyLength);
+            PooledText value = map.get(probe);
+            if (value == null) {
+                value = newValue();
+                map.put(newKey(probe), value);
+            }
+            if (value.generation != generation) {
+                value.generation = generation;
+                count++;
+            }
+            value.set(bytes, scanner.getValueStart(), scanner.getValueLength());
+        }
+        if (count < map.size()) {
+            removeStaleEntries();
+        }
+        return map;
+    }
+
+    /**
+     * Removes the entries for keys that are not in the current row, keeping their Text objects for reuse.
+     */
+    private void removeStaleEntries() {
+        final Iterator<Map.Entry<Text, PooledText>> entries = map.entrySet().iterator();
+        while (entries.hasNext()) {
+            final Map.Entry<Text, PooledText> entry = entries.next();
+            if (entry.getValue().generation != generation) {
+                freeKeys.add(entry.getKey());
+                freeValues.add(entry.getValue());
+                entries.remove();
+            }
+        }
+    }
+
+    private Text newKey(final Text key) {
+        final Text result = freeKeys.isEmpty() ? new Text() : freeKeys.remove(freeKeys.size() - 1);
+        result.set(key);
+        return result;
+    }
+
+    private PooledText newValue() {
+        return freeValues.isEmpty() ? new PooledText() : freeValues.remove(freeValues.size() - 1);
+    }
+
+    private Text getText(final DeferredObject[] arguments, final int i) throws HiveException {
+        final Object o = arguments[i].get();
+        return o == null ? null : inputOIs[i].getPrimitiveWritableObject(o);
+    }
+
+    private static boolean isEmpty(final Text text) {
+        return text == null || text.getLength() == 0;
+    }
+
+    private static boolean startsWith(final byte[] bytes, final int start, final int length, final Text prefix) {
+        return length >= prefix.getLength()
+                && KeyValueScanner.equals(bytes, start, prefix.getLength(), prefix.getBytes(), 0, prefix.getLength());
+    }
+
+    @Override
+    public String getDisplayString(final String[] children) {
+        final StringBuilder builder = new StringBuilder(FUNCTION_NAME).append('(');
+        for (int i = 0; i < children.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(children[i]);
+        }
+        return builder.append(')').toString();
+    }
+}
@@ -18,15 +18,13 @@
 
 package com.cloudera.hive.udf.functions;
 
-import com.google.common.base.Splitter;
-import com.google.common.collect.ImmutableList;
-import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.generic.GenericUDTF;
+import org.apache.hadoop.hive.serde2.objectinspector.ConstantObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
 import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
@@ -34,13 +32,14 @@ import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectIn
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
 import org.apache.hadoop.io.Text;
 
-import java.util.*;
+import java.util.ArrayList;
 
 /**
  * This UDTF provides a function to parse a string of delimited key value pairs.</br>
  * An example of this would be a URL Query string or a string representation of a cookie.</br>
  * <P>
- * Note: Both static and dynamic input parameters are supported.
+ * Note: Both static and dynamic input parameters are supported. Constant delimiters and key names are compiled
+ * once when the UDTF is initialized; dynamic ones are read from every row.
  * <P>
  * Example Strings:</br>
  *  URL Query: "KEY1=val1&KEY2=val2&KEY3=val3"</br>
@@ -65,16 +64,48 @@ public class ParseKeyValueTuple extends GenericUDTF {
     private static final String FUNCTION_NAME = "parse_key_val_tuple";
     private static final int STATIC_ARG_COUNT = 3;
     private static final String REQUIRED_TYPE = "string";
+    /**
+     * System property holding the number of input strings whose results are cached, 0 (the default) disables the cache.
+     * Set it for the tasks with, for example, "SET mapred.child.java.opts=-Dparse_key_val_tuple.cache.size=1024;".
+     */
+    public static final String CACHE_SIZE_PROPERTY = "parse_key_val_tuple.cache.size";
 
-    private transient ObjectInspector[] inputOIs; // Input ObjectInspectors
+    private transient StringObjectInspector[] inputOIs; // Input ObjectInspectors
     private int numCols;    // Number of output columns
     private Text[] cols;    // Object pool of non-null Text, avoid creating objects all the time
     private transient Object[] nullCols; // Array of null column values (returned during errors)
+    private transient Object[] returnColumns; // Reused row of return column values
+    private transient Text[] keyNames; // Key names of the current row
+    private transient Text constantDelimiter; // Field delimiter, when it is a constant
+    private transient Text constantSeparator; // Key value separator, when it is a constant
+    private transient boolean constantKeyNames; // Whether the key names are all constants
+    private transient boolean constantArgIsEmpty; // Whether a constant argument is empty, so every row is null
+    private transient KeyMatcher matcher;
+    private transient boolean[] found; // Whether each return column has been assigned for the current row
+    private transient KeyValueScanner scanner;
     private boolean nullWarned = false;
     private boolean mapWarned = false;
+    private final boolean percentDecode; // Whether keys and values are URL encoded
+    private transient PercentDecoder decoder;
+    private transient ParsedValueCache cache; // Results for repeated input strings, null when disabled
+
+    public ParseKeyValueTuple() {
+        this(false);
+    }
+
+    /**
+     * @param percentDecode whether keys and values should be percent-decoded before they are matched and returned
+     */
+    protected ParseKeyValueTuple(final boolean percentDecode) {
+        this.percentDecode = percentDecode;
+    }
 
     @Override
     public void close() {
+        if (cache != null) {
+            LOG.info(toString() + " cache hit rate: " + cache.getHits() + " of " + cache.getLookups() + " lookups ("
+                    + Math.round(cache.getHitRate() * 100) + "%)");
+        }
     }
 
     /**
@@ -88,10 +119,21 @@ public class ParseKeyValueTuple extends GenericUDTF {
     public StructObjectInspector initialize(final ObjectInspector[] args) throws UDFArgumentException {
         validateArgs(args);
         // Initialize fields
-        inputOIs = args;
+        inputOIs = new StringObjectInspector[args.length];
+        for (int i = 0; i < args.length; ++i) {
+            inputOIs[i] = (StringObjectInspector) args[i];
+        }
         numCols = args.length - STATIC_ARG_COUNT;
         cols = new Text[numCols];
         nullCols = new Object[numCols];
+        returnColumns = new Object[numCols];
+        keyNames = new Text[numCols];
+        found = new boolean[numCols];
+        scanner = new KeyValueScanner();
+        matcher = new KeyMatcher(numCols);
+        decoder = new PercentDecoder();
+        compileConstantArgs(args);
+        cache = createCache();
         nullWarned = false;
         mapWarned = false;
         // Fill arrays
@@ -102,6 +144,69 @@ public class ParseKeyValueTuple extends GenericUDTF {
         return createOutputObjectInspector();
     }
 
+    /**
+     * Compiles the delimiter, separator and key name arguments that are constants, so that they do not
+     * have to be read for every row.
+     *
+     * @param args the UDTF args
+     */
+    private void compileConstantArgs(final ObjectInspector[] args) {
+        constantArgIsEmpty = false;
+        constantDelimiter = null;
+        constantSeparator = null;
+        if (args[1] instanceof ConstantObjectInspector && args[2] instanceof ConstantObjectInspector) {
+            constantDelimiter = getConstantText(args[1]);
+            constantSeparator = getConstantText(args[2]);
+            constantArgIsEmpty = isEmpty(constantDelimiter) || isEmpty(constantSeparator);
+        }
+        constantKeyNames = true;
+        for (int i = 0; i < numCols; i++) {
+            if (!(args[i + STATIC_ARG_COUNT] instanceof ConstantObjectInspector)) {
+                constantKeyNames = false;
+                break;
+            }
+        }
+        if (constantKeyNames) {
+            for (int i = 0; i < numCols; i++) {
+                keyNames[i] = getConstantText(args[i + STATIC_ARG_COUNT]);
+                constantArgIsEmpty |= isEmpty(keyNames[i]);
+            }
+            if (!constantArgIsEmpty) {
+                matcher.compile(keyNames);
+            }
+        }
+    }
+
+    /**
+     * Creates the result cache when it has been enabled through {@link #CACHE_SIZE_PROPERTY}.
+     * Cached results are only valid for one set of delimiters and key names, so they must all be constants.
+     *
+     * @return the cache, or null
+     */
+    private ParsedValueCache createCache() {
+        final int size = Integer.getInteger(CACHE_SIZE_PROPERTY, 0);
+        if (size <= 0) {
+            return null;
+        }
+        if (constantDelimiter == null || !constantKeyNames) {
+            LOG.warn(CACHE_SIZE_PROPERTY + " is ignored because the delimiters or key names are not constants.");
+            return null;
+        }
+        return new ParsedValueCache(size);
+    }
+
+    /**
+     * Gets the value of a constant string argument.
+     *
+     * @param arg a constant string ObjectInspector
+     * @return a copy of the value, empty if the constant is null
+     */
+    private static Text getConstantText(final ObjectInspector arg) {
+        final Object value = ((ConstantObjectInspector) arg).getWritableConstantValue();
+        final Text text = value == null ? null : ((StringObjectInspector) arg).getPrimitiveWritableObject(value);
+        return text == null ? new Text() : new Text(text);
+    }
+
     /**
      * Validates the arity and type of the input arguments.
      *
@@ -139,6 +244,9 @@ public class ParseKeyValueTuple extends GenericUDTF {
 
     /**
      * Process the UDTF input values and forward the resulting rows.
+     * <p>
+     * The input is scanned as UTF-8 bytes, and only the matched value slices are copied into the pooled
+     * return columns, so no Strings or collections are created per row.
      *
      * @param o UDTF input values
      * @throws HiveException
@@ -150,13 +258,17 @@ public class ParseKeyValueTuple extends GenericUDTF {
             return;
         }
 
-        // Get UDTF input values
-        final String inputStr = getStringFromInputObjects(o, 0);
-        final String fieldDelimiter = getStringFromInputObjects(o, 1);
-        final String keyValSeparator = getStringFromInputObjects(o, 2);
-        final List<String> keyNames = getKeyNamesFromInputObjects(o);
+        // Get UDTF input values, the constant ones were read in initialize
+        final Text inputText = getTextFromInputObjects(o, 0);
+        final Text fieldDelimiter = constantDelimiter != null ? constantDelimiter : getTextFromInputObjects(o, 1);
+        final Text keyValSeparator = constantSeparator != null ? constantSeparator : getTextFromInputObjects(o, 2);
+        if (!constantKeyNames) {
+            for (int i = 0; i < numCols; i++) {
+                keyNames[i] = getTextFromInputObjects(o, i + STATIC_ARG_COUNT);
+            }
+        }
 
-        if (inputValueIsEmpty(inputStr, fieldDelimiter, keyValSeparator, keyNames)) {
+        if (constantArgIsEmpty || inputValueIsEmpty(inputText, fieldDelimiter, keyValSeparator, keyNames)) {
             if(!nullWarned) {
                 LOG.warn("At least 1 Null row returned. An input argument was empty. Additional warnings for a null row will be suppressed.");
                 nullWarned = true;
@@ -165,112 +277,119 @@ public class ParseKeyValueTuple extends GenericUDTF {
             return;
         }
 
-        final Map<String, String> keyValMap = getKeyValMap(inputStr, fieldDelimiter, keyValSeparator, keyNames);
-        final Text[] returnColumns = getReturnColumnValues(keyNames, keyValMap);
-        forward(returnColumns);
-    }
+        if (cache != null) {
+            final ParsedValueCache.Entry cached = cache.get(inputText.getBytes(), inputText.getLength());
+            if (cached != null) {
+                cached.copyTo(cols, returnColumns);
+                forward(returnColumns);
+                return;
+            }
+        }
 
-    /**
-     * Gets an array of the keyNames from the passed object array based on UDTF arguments.
-     *
-     * @param o input objects
-     * @return a list of keyNames
-     */
-    private List<String> getKeyNamesFromInputObjects(final Object[] o) {
-        final ImmutableList.Builder<String> builder = new ImmutableList.Builder<String>();
-        for (int i = 0; i < numCols; i++) {
-            final String keyName = getStringFromInputObjects(o, i + STATIC_ARG_COUNT);
-            builder.add(keyName);
+        if (!constantKeyNames) {
+            matcher.compile(keyNames);
+        }
+        scanner.reset(inputText, fieldDelimiter, keyValSeparator);
+        extractValues();
+        if (cache != null) {
+            cache.put(inputText.getBytes(), inputText.getLength(), returnColumns);
         }
-        return builder.build();
+        forward(returnColumns);
     }
 
     /**
-     * Gets a string value from the passed object array based on UDTF arguments and an index.
+     * Gets a Text value from the passed object array based on UDTF arguments and an index.
      *
      * @param o input objects
      * @param i index to retrieve
-     * @return the string value
+     * @return the Text value, or null
      */
-    private String getStringFromInputObjects(final Object[] o, final int i) {
-        return ((StringObjectInspector) inputOIs[i]).getPrimitiveJavaObject(o[i]);
+    private Text getTextFromInputObjects(final Object[] o, final int i) {
+        return inputOIs[i].getPrimitiveWritableObject(o[i]);
     }
 
     /**
-     * Returns true if any of the input strings are empty.
+     * Returns true if any of the input strings are null or empty.
      *
-     * @param inputStr        the input string
+     * @param inputText       the input string
      * @param fieldDelimiter  the field delimiter
      * @param keyValSeparator the key value separator
      * @param keyNames        the key names
      * @return true if any of the string are empty
      */
-    private boolean inputValueIsEmpty(final String inputStr, final String fieldDelimiter, final String keyValSeparator, final List<String> keyNames) {
-        return StringUtils.isEmpty(inputStr) ||
-                StringUtils.isEmpty(fieldDelimiter) ||
-                StringUtils.isEmpty(keyValSeparator) ||
-                keyNames.contains("");
+    private boolean inputValueIsEmpty(final Text inputText, final Text fieldDelimiter, final Text keyValSeparator, final Text[] keyNames) {
+        if (isEmpty(inputText) || isEmpty(fieldDelimiter) || isEmpty(keyValSeparator)) {
+            return true;
+        }
+        for (final Text keyName : keyNames) {
+            if (isEmpty(keyName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isEmpty(final Text text) {
+        return text == null || text.getLength() == 0;
     }
 
     /**
-     * Processes the input string into a KeyValue Map utilizing the fieldDelimiter and keyValSeparator.</br>
-     * Only considers valid pairs(has keyValSeparator) with non-empty/null keys that are in keyNames.
+     * Scans the input for the key names, copying each matched value into the pooled return columns.</br>
+     * Only considers valid pairs(has keyValSeparator) with non-empty keys that are in keyNames.
      * <p>
-     * Note: The key is the string before the first occurrence of keyValSeparator and the value is everything after.</br>
      * Note: If a key occurs twice the last value seen will be represented.
-     *
-     * @param inputString     the string to be processed
-     * @param fieldDelimiter  separator between KeyValue pairs
-     * @param keyValSeparator separator between key and value
-     * @param keyNames        used to filter values inserted
-     * @return the key value map for keyNames
      */
-    private Map<String, String> getKeyValMap(final String inputString, final String fieldDelimiter, final String keyValSeparator, final List<String> keyNames) {
-        final Set<String> uniqueKeyNames = new HashSet<String>(keyNames); // Optimize in the case of duplicate key names
-        final Map<String, String> keyValMap = new HashMap<String, String>(uniqueKeyNames.size()); //Initialized with the expected size
-        final Iterable<String> splitIterable = Splitter.on(fieldDelimiter).omitEmptyStrings().split(inputString); //Iterator to prevent excessive allocation
-        int count = 0; // Counter to break out when we have seen all of the uniqueKeyNames
-        for (final String keyValPair : splitIterable) {
-            final String key = StringUtils.substringBefore(keyValPair, keyValSeparator);
-            final String value = StringUtils.substringAfter(keyValPair, keyValSeparator);
-            // Only consider valid pairs with non-empty/null keys that are in uniqueKeyNames
-            if (StringUtils.contains(keyValPair, keyValSeparator) && !StringUtils.isEmpty(key) && uniqueKeyNames.contains(key) ) {
-                final String prev = keyValMap.put(key, value);
-                if(prev == null) {
-                    count++;
-                } else if(!mapWarned) { // Otherwise a key was replaced
-                    LOG.warn("At least 1 inputString had a duplicate key for a keyName. The second value will be represented. Additional warnings for a duplicate key will be suppressed.");
-                    mapWarned = true;
-                }
-                if (count >= uniqueKeyNames.size()) {
-                    break; // We have seen all of the keyNames needed
-                }
+    private void extractValues() {
+        final int uniqueKeyCount = matcher.getUniqueKeyCount();
+        for (int i = 0; i < numCols; i++) {
+            found[i] = false;
+            returnColumns[i] = null;
+        }
+        int count = 0; // Counter to break out when we have seen all of the unique key names
+        while (scanner.next()) {
+            final byte[] bytes = scanner.getBytes();
+            final int column;
+            if (percentDecode && PercentDecoder.needsDecoding(bytes, scanner.getKeyStart(), scanner.getKeyLength())) {
+                decoder.decode(bytes, scanner.getKeyStart(), scanner.getKeyLength());
+                column = matcher.match(decoder.getBytes(), 0, decoder.getLength());
+            } else {
+                column = matcher.match(bytes, scanner.getKeyStart(), scanner.getKeyLength());
+            }
+            if (column < 0) {
+                continue;
+            }
+            if (!found[column]) {
+                count++;
+            } else if (!mapWarned) { // Otherwise a key was replaced
+                LOG.warn("At least 1 inputString had a duplicate key for a keyName. The second value will be represented. Additional warnings for a duplicate key will be suppressed.");
+                mapWarned = true;
+            }
+            if (percentDecode && PercentDecoder.needsDecoding(bytes, scanner.getValueStart(), scanner.getValueLength())) {
+                decoder.decode(bytes, scanner.getValueStart(), scanner.getValueLength());
+                setReturnColumns(column, decoder.getBytes(), 0, decoder.getLength());
+            } else {
+                setReturnColumns(column, bytes, scanner.getValueStart(), scanner.getValueLength());
+            }
+            if (count >= uniqueKeyCount) {
+                break; // We have seen all of the keyNames needed
             }
         }
-        return keyValMap;
     }
 
     /**
-     * Retrieves all of the column values to be returned.
+     * Sets the value of the return column for a key name, and of any duplicates of that key name.
      *
-     * @param keyNames  keyNames of the return columns
-     * @param keyValMap KeyValMap containing the values
-     * @return Text array of return column values
+     * @param first the index of the first occurrence of the key name
+     * @param bytes the bytes holding the value
+     * @param start the start of the value
+     * @param length the length of the value
      */
-    private Text[] getReturnColumnValues(final List<String> keyNames, final Map<String, String> keyValMap) {
-        final Text[] returnColumns = new Text[numCols];
-        for (int i = 0; i < numCols; ++i) {
-            final String ret = keyValMap.get(keyNames.get(i));
-            if (ret == null) {
-                returnColumns[i] = null;
-            } else {
-                if (returnColumns[i] == null) {
-                    returnColumns[i] = cols[i]; // Use the object pool rather than creating a new object
-                }
-                returnColumns[i].set(ret);
-            }
+    private void setReturnColumns(final int first, final byte[] bytes, final int start, final int length) {
+        for (int i = first; i >= 0; i = matcher.getNextDuplicate(i)) {
+            cols[i].set(bytes, start, length); // Use the object pool rather than creating a new object
+            found[i] = true;
+            returnColumns[i] = cols[i];
         }
-        return returnColumns;
     }
 
     /**
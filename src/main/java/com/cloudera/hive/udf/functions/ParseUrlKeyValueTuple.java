@@ -0,0 +1,56 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+
+/**
+ * This UDTF is {@link ParseKeyValueTuple} for URL encoded strings, such as URL query strings.</br>
+ * Keys and values are percent-decoded straight from the input bytes into the returned Text columns, and keys are
+ * matched against the key names after decoding.
+ * <P>
+ * Note: '+' decodes to a space, as with java.net.URLDecoder. A malformed escape is returned unchanged.
+ *
+ *  @see ParseKeyValueTuple
+ */
+@Description(name = "parse_url_key_val_tuple",
+        value = "_FUNC_(inputString, fieldDelimiter, keyValSeparator, keyName, keyName2, ..., keyNameN) - extracts N (N>=1) URL decoded parts from a delimited key value String.\n"
+                + "It takes an inputString, fieldDelimiter, keyValSeparator, and one or multiple decoded keyNames, and returns a tuple. "
+                + "All the input parameters and output column types are string.",
+        extended = "Note: All parameters are case-sensitive, and should not contain unnecessary white spaces.\n"
+                + "Example:\n"
+                + "  > SELECT b.* FROM src LATERAL VIEW _FUNC_('q=hive+udf&lang=en%2Dgb', '&', '=', 'q', 'lang') b as q, lang LIMIT 1;\n"
+                + "  hive udf\ten-gb")
+public class ParseUrlKeyValueTuple extends ParseKeyValueTuple {
+    private static final String FUNCTION_NAME = "parse_url_key_val_tuple";
+
+    public ParseUrlKeyValueTuple() {
+        super(true);
+    }
+
+    /**
+     * Returns the name of the UDTF function.
+     *
+     * @return name of the UDTF function
+     */
+    @Override
+    public String toString() {
+        return FUNCTION_NAME;
+    }
+}
@@ -0,0 +1,174 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded, least recently used cache of the return columns extracted from an input string.</br>
+ * Entries are keyed by the bytes of the input string, so a hit costs a hash of the input and a byte comparison
+ * instead of a full tokenization. Lookups reuse a single probe entry and do not allocate; only a miss that is
+ * added to the cache creates an entry.
+ * <p>
+ * Note: The cached columns are only valid for the delimiters and key names they were extracted with, so the
+ * cache may only be used when those are constant.
+ */
+class ParsedValueCache {
+    private final int maxSize;
+    private final Map<Entry, Entry> entries;
+    private final Entry probe = new Entry();
+    private long lookups = 0;
+    private long hits = 0;
+
+    /**
+     * A cached input string and the return columns extracted from it.
+     */
+    static final class Entry {
+        private byte[] input;
+        private int inputLength;
+        private int hash;
+        private byte[] values;  // The values of all of the columns, one after the other
+        private int[] lengths;  // The length of each column value, -1 for a null column
+
+        private void reference(final byte[] bytes, final int length) {
+            this.input = bytes;
+            this.inputLength = length;
+            this.hash = WritableComparator.hashBytes(bytes, length);
+        }
+
+        /**
+         * Copies the cached values into the pooled return columns.
+         *
+         * @param cols          the pooled return columns
+         * @param returnColumns set to the pooled column, or null, for every return column
+         */
+        void copyTo(final Text[] cols, final Object[] returnColumns) {
+            int start = 0;
+            for (int i = 0; i < cols.length; i++) {
+                if (lengths[i] < 0) {
+                    returnColumns[i] = null;
+                } else {
+                    cols[i].set(values, start, lengths[i]);
+                    returnColumns[i] = cols[i];
+                    start += lengths[i];
+                }
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            final Entry other = (Entry) o;
+            return hash == other.hash
+                    && KeyValueScanner.equals(input, 0, inputLength, other.input, 0, other.inputLength);
+        }
+    }
+
+    /**
+     * @param maxSize the maximum number of input strings to remember
+     */
+    ParsedValueCache(final int maxSize) {
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<Entry, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Entry, Entry> eldest) {
+                return size() > ParsedValueCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Looks up an input string.
+     *
+     * @param bytes  the bytes of the input string
+     * @param length the length of the input string
+     * @return the cached entry, or null
+     */
+    Entry get(final byte[] bytes, final int length) {
+        probe.reference(bytes, length);
+        final Entry entry = entries.get(probe);
+        probe.input = null;
+        lookups++;
+        if (entry != null) {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * Remembers the return columns extracted from an input string.
+     *
+     * @param bytes         the bytes of the input string
+     * @param length        the length of the input string
+     * @param returnColumns the return columns, each a Text or null
+     */
+    void put(final byte[] bytes, final int length, final Object[] returnColumns) {
+        final Entry entry = new Entry();
+        final byte[] input = new byte[length];
+        System.arraycopy(bytes, 0, input, 0, length);
+        entry.reference(input, length);
+
+        int total = 0;
+        for (final Object column : returnColumns) {
+            if (column != null) {
+                total += ((Text) column).getLength();
+            }
+        }
+        entry.values = new byte[total];
+        entry.lengths = new int[returnColumns.length];
+        int start = 0;
+        for (int i = 0; i < returnColumns.length; i++) {
+            if (returnColumns[i] == null) {
+                entry.lengths[i] = -1;
+            } else {
+                final Text column = (Text) returnColumns[i];
+                System.arraycopy(column.getBytes(), 0, entry.values, start, column.getLength());
+                entry.lengths[i] = column.getLength();
+                start += column.getLength();
+            }
+        }
+        entries.put(entry, entry);
+    }
+
+    long getLookups() {
+        return lookups;
+    }
+
+    long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the fraction of lookups that were hits
+     */
+    double getHitRate() {
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * An append-only sequence of serialized records that can be replayed in order.
+ * <p>
+ * Records are packed end to end into a single byte array, with an int offset for each. Once the records take up
+ * more than the memory limit they are spilled to a temporary file on local disk and the memory is reused, so the
+ * number of records is bounded only by the disk. Replay reads back the spilled records followed by the ones still
+ * in memory. The last record added is always kept in memory, for the functions that need it before replay.
+ */
+class PartitionBuffer {
+
+	private final long memoryLimit;
+
+	private byte[] data = new byte[4096];
+	private int[] offsets = new int[256];
+	private int records;		// Records in memory
+	private int dataLength;
+
+	private File spillFile;
+	private DataOutputStream spillOutput;
+	private long spilledRecords;
+
+	private byte[] last = new byte[64];
+	private int lastLength;
+
+	private DataInputStream replayInput;
+	private long replayed;
+	private int replayIndex;
+	private byte[] current = new byte[64];
+	private byte[] currentBytes;
+	private int currentStart;
+	private int currentLength;
+
+	/**
+	 * @param memoryLimit - the number of bytes that records may take up in memory before they are spilled
+	 */
+	PartitionBuffer(long memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	/**
+	 * @return the total number of records, in memory and on disk
+	 */
+	long size() {
+		return spilledRecords + records;
+	}
+
+	/**
+	 * Appends a copy of a record.
+	 *
+	 * @throws IOException if the records could not be spilled
+	 */
+	void add(byte[] bytes, int start, int length) throws IOException {
+		if (records > 0 && (long) dataLength + length + 4L * (records + 1) > memoryLimit) {
+			spill();
+		}
+		if (data.length - dataLength < length) {
+			data = grow(data, dataLength + length);
+		}
+		if (records == offsets.length) {
+			int[] bigger = new int[offsets.length * 2];
+			System.arraycopy(offsets, 0, bigger, 0, records);
+			offsets = bigger;
+		}
+		System.arraycopy(bytes, start, data, dataLength, length);
+		offsets[records++] = dataLength;
+		dataLength += length;
+
+		if (last.length < length) {
+			last = grow(last, length);
+		}
+		System.arraycopy(bytes, start, last, 0, length);
+		lastLength = length;
+	}
+
+	byte[] getLastBytes() {
+		return last;
+	}
+
+	int getLastLength() {
+		return lastLength;
+	}
+
+	private void spill() throws IOException {
+		if (spillOutput == null) {
+			// Not deleteOnExit, which would keep every name until the reused JVM exits; clear() deletes the file, and
+			// the task's temporary directory is removed with the task if it fails before then
+			spillFile = File.createTempFile("partition", ".spill");
+			spillOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spillFile), 65536));
+		}
+		for (int index = 0; index < records; index++) {
+			int start = offsets[index];
+			int end = index + 1 < records ? offsets[index + 1] : dataLength;
+			spillOutput.writeInt(end - start);
+			spillOutput.write(data, start, end - start);
+		}
+		spilledRecords += records;
+		records = 0;
+		dataLength = 0;
+	}
+
+	/**
+	 * Starts reading the records back from the first one. No more records may be added until {@link #clear()}.
+	 *
+	 * @throws IOException
+	 */
+	void startReplay() throws IOException {
+		closeReplay();
+		if (spillOutput != null) {
+			spillOutput.flush();
+			replayInput = new DataInputStream(new BufferedInputStream(new FileInputStream(spillFile), 65536));
+		}
+		replayed = 0;
+		replayIndex = 0;
+	}
+
+	/**
+	 * Moves to the next record.
+	 *
+	 * @return false when every record has been read
+	 * @throws IOException
+	 */
+	boolean next() throws IOException {
+		if (replayed < spilledRecords) {
+			int length = replayInput.readInt();
+			if (current.length < length) {
+				current = grow(current, length);
+			}
+			replayInput.readFully(current, 0, length);
+			currentBytes = current;
+			currentStart = 0;
+			currentLength = length;
+			++replayed;
+			return true;
+		}
+		if (replayIndex < records) {
+			currentBytes = data;
+			currentStart = offsets[replayIndex];
+			currentLength = (replayIndex + 1 < records ? offsets[replayIndex + 1] : dataLength) - currentStart;
+			++replayIndex;
+			return true;
+		}
+		return false;
+	}
+
+	byte[] getBytes() {
+		return currentBytes;
+	}
+
+	int getStart() {
+		return currentStart;
+	}
+
+	int getLength() {
+		return currentLength;
+	}
+
+	/**
+	 * Forgets every record and deletes the spill file, keeping the memory for the next partition.
+	 *
+	 * @throws IOException
+	 */
+	void clear() throws IOException {
+		closeReplay();
+		if (spillOutput != null) {
+			spillOutput.close();
+			spillOutput = null;
+			if (!spillFile.delete()) {
+				throw new IOException("Could not delete " + spillFile);
+			}
+			spillFile = null;
+		}
+		spilledRecords = 0;
+		records = 0;
+		dataLength = 0;
+		lastLength = 0;
+	}
+
+	private void closeReplay() throws IOException {
+		if (replayInput != null) {
+			replayInput.close();
+			replayInput = null;
+		}
+	}
+
+	private static byte[] grow(byte[] bytes, int minimum) {
+		byte[] bigger = new byte[Math.max(minimum, bytes.length * 2)];
+		System.arraycopy(bytes, 0, bigger, 0, bytes.length);
+		return bigger;
+	}
+
+}
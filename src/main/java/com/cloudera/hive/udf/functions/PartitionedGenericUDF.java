@@ -0,0 +1,75 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+
+/**
+ * Common base for the stateful UDFs that work over a partitioned, sorted stream of rows.
+ * <p>
+ * By convention the first argument is the value and the remaining arguments are the PARTITION BY
+ * columns. Subclasses ask {@link #partitionChanged(DeferredObject[])} once per row to find out whether
+ * a new partition has started.
+ */
+public abstract class PartitionedGenericUDF extends GenericUDF {
+
+	protected ObjectInspector[] ois;
+	private GroupKey partition;
+
+	@Override
+	public final ObjectInspector initialize(ObjectInspector[] ois) throws UDFArgumentException {
+		if (ois.length < 1) {
+			throw new UDFArgumentException(getDisplayString(new String[0]) + " takes at least one argument");
+		}
+		this.ois = ois;
+		this.partition = GroupKey.forColumns(ois, getFirstPartitionColumn(), ois.length);
+		return initializeFunction(ois);
+	}
+
+	/**
+	 * Called once the partition key has been set up, to initialize the function itself.
+	 *
+	 * @param ois - the ObjectInspectors of all of the arguments
+	 * @return the ObjectInspector of the return value
+	 * @throws UDFArgumentException
+	 */
+	protected abstract ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException;
+
+	/**
+	 * @return the index of the first argument that belongs to the partition key
+	 */
+	protected int getFirstPartitionColumn() {
+		return 1;
+	}
+
+	/**
+	 * This will tell us if the current row starts a new partition.
+	 *
+	 * @param current
+	 * @return true for the first row, and for every row whose partition columns differ from the previous row
+	 * @throws HiveException
+	 */
+	protected boolean partitionChanged(DeferredObject[] current) throws HiveException {
+		return partition.update(current);
+	}
+
+}
@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.io.IOException;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+
+/**
+ * Common base for the buffered window functions that depend on where a row's peers, the rows with an equal value,
+ * start and end within the partition.
+ * <p>
+ * The sizes of the peer groups are found while the partition is buffered, and kept in a {@link PartitionBuffer} of
+ * their own, so they too can spill to disk.
+ */
+public abstract class PeerGroupUDTF extends BufferedPartitionUDTF {
+
+	private GroupKey peers;
+	private PartitionBuffer peerSizes;
+	private final byte[] size = new byte[8];
+	private long groupStart;	// First row of the current peer group
+	private long groupEnd;		// Row after the last row of the current peer group
+	protected final DoubleWritable result = new DoubleWritable();
+
+	@Override
+	protected ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException {
+		peers = GroupKey.forColumns(ois, 0, 1);
+		peerSizes = new PartitionBuffer(getMemoryLimit());
+		return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+	}
+
+	@Override
+	protected void buffered(Object[] arguments, long row) throws HiveException {
+		if (row == 0) {
+			peers.reset();
+			peers.update(arguments);
+			groupStart = 0;
+		} else if (peers.update(arguments)) {
+			addPeerGroup(row - groupStart);
+			groupStart = row;
+		}
+	}
+
+	@Override
+	protected void partitionComplete(long rows) throws HiveException {
+		addPeerGroup(rows - groupStart);
+		try {
+			peerSizes.startReplay();
+		} catch (IOException e) {
+			throw new HiveException(e);
+		}
+		groupStart = 0;
+		groupEnd = 0;
+	}
+
+	private void addPeerGroup(long rows) throws HiveException {
+		for (int index = 0; index < 8; index++) {
+			size[index] = (byte) (rows >>> (56 - 8 * index));
+		}
+		try {
+			peerSizes.add(size, 0, 8);
+		} catch (IOException e) {
+			throw new HiveException(e);
+		}
+	}
+
+	@Override
+	protected Object result(long row, long rows) throws HiveException {
+		if (row == groupEnd) {
+			try {
+				peerSizes.next();
+			} catch (IOException e) {
+				throw new HiveException(e);
+			}
+			byte[] bytes = peerSizes.getBytes();
+			int start = peerSizes.getStart();
+			long rowsInGroup = 0;
+			for (int index = 0; index < 8; index++) {
+				rowsInGroup = (rowsInGroup << 8) | (bytes[start + index] & 0xff);
+			}
+			groupStart = row;
+			groupEnd = row + rowsInGroup;
+		}
+		return result(groupStart, groupEnd, rows);
+	}
+
+	@Override
+	protected void partitionReplayed() throws HiveException {
+		try {
+			peerSizes.clear();
+		} catch (IOException e) {
+			throw new HiveException(e);
+		}
+	}
+
+	/**
+	 * Computes the result for a row from the position of its peers.
+	 *
+	 * @param groupStart - the index of the first peer of the row
+	 * @param groupEnd - the index after the last peer of the row
+	 * @param rows - the number of rows in the partition
+	 * @return the result, normally {@link #result}
+	 */
+	protected abstract Object result(long groupStart, long groupEnd, long rows);
+
+}
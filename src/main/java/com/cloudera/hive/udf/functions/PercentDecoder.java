@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+/**
+ * Decodes application/x-www-form-urlencoded byte slices into a reusable buffer.</br>
+ * "%XX" becomes the byte 0xXX and '+' becomes a space, as with {@link java.net.URLDecoder}, but the input is never
+ * decoded to a String. Unlike URLDecoder, a malformed escape is not an error: it is copied through unchanged.
+ */
+class PercentDecoder {
+    private byte[] buffer = new byte[64];
+    private int length;
+
+    /**
+     * @return true if the slice contains anything that decoding would change
+     */
+    static boolean needsDecoding(final byte[] bytes, final int start, final int length) {
+        for (int i = start; i < start + length; i++) {
+            if (bytes[i] == '%' || bytes[i] == '+') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes a slice into the buffer, replacing the previous contents.
+     *
+     * @param bytes  the bytes holding the encoded slice
+     * @param start  the start of the slice
+     * @param length the length of the slice
+     */
+    void decode(final byte[] bytes, final int start, final int length) {
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, buffer.length * 2)]; // Decoding never makes a slice longer
+        }
+        final int end = start + length;
+        int out = 0;
+        for (int i = start; i < end; i++) {
+            final byte b = bytes[i];
+            if (b == '+') {
+                buffer[out++] = ' ';
+            } else if (b == '%' && i + 2 < end && hexValue(bytes[i + 1]) >= 0 && hexValue(bytes[i + 2]) >= 0) {
+                buffer[out++] = (byte) ((hexValue(bytes[i + 1]) << 4) | hexValue(bytes[i + 2]));
+                i += 2;
+            } else {
+                buffer[out++] = b;
+            }
+        }
+        this.length = out;
+    }
+
+    byte[] getBytes() {
+        return buffer;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    private static int hexValue(final byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        } else if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        } else if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,41 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+
+/**
+ * This UDTF provides a percent_rank() function: (rank - 1) / (rows in the partition - 1), or 0 for a partition
+ * of one row.
+ */
+@Description(name = "percent_rank", value = "_FUNC_(value, optional partition columns ...) - Forwards each row of a partitioned, sorted window with its relative rank, from 0 to 1.")
+public class PercentRank extends PeerGroupUDTF {
+
+	@Override
+	protected Object result(long groupStart, long groupEnd, long rows) {
+		result.set(rows == 1 ? 0 : (double) groupStart / (rows - 1));
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "percent_rank";
+	}
+
+}
@@ -22,31 +22,27 @@ import org.apache.hadoop.hive.ql.exec.Description;
 import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
 import org.apache.hadoop.hive.ql.metadata.HiveException;
 import org.apache.hadoop.hive.ql.udf.UDFType;
-import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
-import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
-import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory.ObjectInspectorOptions;
-import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
 import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.LongWritable;
 
 /**
  * This UDF provides a row_number() function.
  */
 @Description(name = "row_number", value = "_FUNC_(value, partition columns ...) - Returns the row_number of a row within a partitioned, sorted window.")
 @UDFType(deterministic = false, stateful = true)
-public class RowNumber extends GenericUDF {
+public class RowNumber extends PartitionedGenericUDF {
 
 	private long counter;
-	private Object[] previousKey;
-	private ObjectInspector[] ois;
+	private final LongWritable result = new LongWritable();
 
 	@Override
 	public Object evaluate(DeferredObject[] currentKey) throws HiveException {
-		if (!sameGroupAsPrevious(currentKey)) {
+		if (partitionChanged(currentKey)) {
 			this.counter = 0;
-			copyToPreviousKey(currentKey);
 		}
-		return new Long(++this.counter);
+		result.set(++this.counter);
+		return result;
 	}
 
 	@Override
@@ -55,59 +51,16 @@ public class RowNumber extends GenericUDF {
 	}
 
 	@Override
-	public ObjectInspector initialize(ObjectInspector[] ois) throws UDFArgumentException {
-		this.ois = ois;
-		return PrimitiveObjectInspectorFactory.javaLongObjectInspector;
+	protected ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException {
+		return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
 	}
 
 	/**
-	 * This will help us copy objects from currrentKey to previousKeyHolder.
-	 *
-	 * @param currentKey
-	 * @throws HiveException
+	 * Every argument, including the first, takes part in the grouping.
 	 */
-	private void copyToPreviousKey(DeferredObject[] currentKey) throws HiveException {
-		if (currentKey != null) {
-			previousKey = new Object[currentKey.length];
-			for (int index = 0; index < currentKey.length; index++) {   
-				previousKey[index]= ObjectInspectorUtils
-						.copyToStandardObject(currentKey[index].get(),this.ois[index]);
-
-			}
-		}   
-	}
-
-	/**
-	 * This will help us compare the currentKey and previousKey objects.
-	 *
-	 * @param currentKey
-	 * @return - true if both are same else false
-	 * @throws HiveException
-	 */
-	private boolean sameGroupAsPrevious(DeferredObject[] currentKey) throws HiveException {
-		boolean status = false;
-
-		//if both are null then we can classify as same
-		if (currentKey == null && previousKey == null) {
-			status = true;
-		}
-
-		//if both are not null and there legnth as well as
-		//individual elements are same then we can classify as same
-		if (currentKey != null && previousKey != null && currentKey.length == previousKey.length) {
-			for (int index = 0; index < currentKey.length; index++) {
-
-				if (ObjectInspectorUtils.compare(currentKey[index].get(), this.ois[index],
-						previousKey[index],
-						ObjectInspectorFactory.getReflectionObjectInspector(previousKey[index].getClass(), ObjectInspectorOptions.JAVA)) != 0) {
-
-					return false;
-				}
-
-			}
-			status = true;
-		}
-		return status;
+	@Override
+	protected int getFirstPartitionColumn() {
+		return 0;
 	}
 
 }
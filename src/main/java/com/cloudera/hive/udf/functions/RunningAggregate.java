@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Common base for the cumulative aggregates over a partitioned, sorted stream of rows.
+ * <p>
+ * Integer values are accumulated as a primitive long and returned as a bigint, floating point values are
+ * accumulated as a primitive double and returned as a double. Null values are skipped, and the result is null
+ * until the partition has seen a value. The accumulators are reset whenever the partition changes.
+ */
+public abstract class RunningAggregate extends PartitionedGenericUDF {
+
+	private PrimitiveObjectInspector valueOI;
+	protected boolean integral;
+	protected long count;	// Non-null values seen so far in the partition
+	protected final LongWritable longResult = new LongWritable();
+	protected final DoubleWritable doubleResult = new DoubleWritable();
+
+	@Override
+	protected ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException {
+		integral = isIntegral(ois[0], getDisplayString(new String[0]));
+		valueOI = (PrimitiveObjectInspector) ois[0];
+		return integral && !isAlwaysDouble()
+				? PrimitiveObjectInspectorFactory.writableLongObjectInspector
+				: PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+	}
+
+	/**
+	 * Checks that a value is numeric, and works out how it should be accumulated.
+	 *
+	 * @param oi - the ObjectInspector of the value
+	 * @param name - the name of the function, for the error message
+	 * @return true for integer values, false for floating point values
+	 * @throws UDFArgumentException if the value is not numeric
+	 */
+	static boolean isIntegral(ObjectInspector oi, String name) throws UDFArgumentException {
+		if (oi.getCategory() == ObjectInspector.Category.PRIMITIVE) {
+			switch (((PrimitiveObjectInspector) oi).getPrimitiveCategory()) {
+			case BYTE:
+			case SHORT:
+			case INT:
+			case LONG:
+				return true;
+			case FLOAT:
+			case DOUBLE:
+				return false;
+			default:
+				break;
+			}
+		}
+		throw new UDFArgumentException(name + " only takes numeric values, but " + oi.getTypeName() + " was passed");
+	}
+
+	/**
+	 * This expects multiple parameters: the first should be the value, the rest should be the PARTITION BY columns.
+	 */
+	@Override
+	public Object evaluate(DeferredObject[] current) throws HiveException {
+		if (partitionChanged(current)) {
+			count = 0;
+		}
+		Object value = current[0].get();
+		if (value != null) {
+			if (integral) {
+				long v = PrimitiveObjectInspectorUtils.getLong(value, valueOI);
+				if (count++ == 0) {
+					first(v);
+				} else {
+					add(v);
+				}
+			} else {
+				double v = PrimitiveObjectInspectorUtils.getDouble(value, valueOI);
+				if (count++ == 0) {
+					first(v);
+				} else {
+					add(v);
+				}
+			}
+		}
+		return count == 0 ? null : result();
+	}
+
+	/**
+	 * @return true if the result is a double even for integer values
+	 */
+	protected boolean isAlwaysDouble() {
+		return false;
+	}
+
+	/**
+	 * Starts the accumulator of a new partition with its first non-null integer value.
+	 */
+	protected abstract void first(long value);
+
+	/**
+	 * Folds a further integer value into the accumulator.
+	 */
+	protected abstract void add(long value);
+
+	/**
+	 * Starts the accumulator of a new partition with its first non-null floating point value.
+	 */
+	protected abstract void first(double value);
+
+	/**
+	 * Folds a further floating point value into the accumulator.
+	 */
+	protected abstract void add(double value);
+
+	/**
+	 * @return the value of the accumulator, in {@link #longResult} or {@link #doubleResult}
+	 */
+	protected abstract Object result();
+
+}
@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+
+/**
+ * This UDF provides a running_avg() function.
+ * <p>
+ * Integer values are summed exactly as a long, and only divided when the average is returned.
+ */
+@Description(name = "running_avg", value = "_FUNC_(value, optional partition columns ...) - Returns the average of the values so far within a partitioned, sorted window.")
+@UDFType(deterministic = false, stateful = true)
+public class RunningAvg extends RunningAggregate {
+
+	private long longSum;
+	private double doubleSum;
+
+	@Override
+	protected boolean isAlwaysDouble() {
+		return true;
+	}
+
+	@Override
+	protected void first(long value) {
+		longSum = value;
+	}
+
+	@Override
+	protected void add(long value) {
+		longSum += value;
+	}
+
+	@Override
+	protected void first(double value) {
+		doubleSum = value;
+	}
+
+	@Override
+	protected void add(double value) {
+		doubleSum += value;
+	}
+
+	@Override
+	protected Object result() {
+		doubleResult.set((integral ? (double) longSum : doubleSum) / count);
+		return doubleResult;
+	}
+
+	@Override
+	public String getDisplayString(String[] currentKey) {
+		return "RunningAvg";
+	}
+
+}
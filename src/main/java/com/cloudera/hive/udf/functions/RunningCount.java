@@ -0,0 +1,64 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * This UDF provides a running_count() function. Unlike row_number(), null values are not counted.
+ */
+@Description(name = "running_count", value = "_FUNC_(value, optional partition columns ...) - Returns the number of non-null values so far within a partitioned, sorted window.")
+@UDFType(deterministic = false, stateful = true)
+public class RunningCount extends PartitionedGenericUDF {
+
+	private long counter;
+	private final LongWritable result = new LongWritable();
+
+	@Override
+	protected ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException {
+		return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+	}
+
+	/**
+	 * This expects multiple parameters: the first should be the value, the rest should be the PARTITION BY columns.
+	 */
+	@Override
+	public Object evaluate(DeferredObject[] current) throws HiveException {
+		if (partitionChanged(current)) {
+			this.counter = 0;
+		}
+		if (current[0].get() != null) {
+			++this.counter;
+		}
+		result.set(this.counter);
+		return result;
+	}
+
+	@Override
+	public String getDisplayString(String[] currentKey) {
+		return "RunningCount";
+	}
+
+}
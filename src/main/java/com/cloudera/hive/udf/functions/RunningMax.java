@@ -0,0 +1,73 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+
+/**
+ * This UDF provides a running_max() function.
+ */
+@Description(name = "running_max", value = "_FUNC_(value, optional partition columns ...) - Returns the largest value so far within a partitioned, sorted window.")
+@UDFType(deterministic = false, stateful = true)
+public class RunningMax extends RunningAggregate {
+
+	private long longMax;
+	private double doubleMax;
+
+	@Override
+	protected void first(long value) {
+		longMax = value;
+	}
+
+	@Override
+	protected void add(long value) {
+		if (value > longMax) {
+			longMax = value;
+		}
+	}
+
+	@Override
+	protected void first(double value) {
+		doubleMax = value;
+	}
+
+	@Override
+	protected void add(double value) {
+		if (value > doubleMax) {
+			doubleMax = value;
+		}
+	}
+
+	@Override
+	protected Object result() {
+		if (integral) {
+			longResult.set(longMax);
+			return longResult;
+		}
+		doubleResult.set(doubleMax);
+		return doubleResult;
+	}
+
+	@Override
+	public String getDisplayString(String[] currentKey) {
+		return "RunningMax";
+	}
+
+}
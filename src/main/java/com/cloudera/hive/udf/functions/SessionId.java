@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * This UDF provides a session_id() function.
+ * <p>
+ * The events of each user, sorted by time, are numbered into sessions from 1. A new session starts with the first
+ * event of a user, and with every event more than gap seconds after the one before it. Timestamps are read as
+ * seconds; integer times are taken to be in the same units as the gap. Events without a time get a null session
+ * and do not affect the sessions around them.
+ */
+@Description(name = "session_id", value = "_FUNC_(time, gap, optional user columns ...) - Returns the number of the session that an event belongs to within a partitioned, time-sorted window.")
+@UDFType(deterministic = false, stateful = true)
+public class SessionId extends PartitionedGenericUDF {
+
+	private PrimitiveObjectInspector timeOI;
+	private PrimitiveObjectInspector gapOI;
+	private long gap = -1;
+	private long previous;		// The time of the previous event
+	private long session;		// 0 until the user's first event
+	private final LongWritable result = new LongWritable();
+
+	@Override
+	protected ObjectInspector initializeFunction(ObjectInspector[] ois) throws UDFArgumentException {
+		if (ois.length < 2) {
+			throw new UDFArgumentException("session_id takes a time, a gap in seconds and optional user columns");
+		}
+		timeOI = MovingAggregate.checkIntegral(ois[0], "session_id", "time", true);
+		gapOI = MovingAggregate.checkIntegral(ois[1], "session_id", "gap", false);
+		gap = -1;
+		return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+	}
+
+	@Override
+	protected int getFirstPartitionColumn() {
+		return 2;
+	}
+
+	/**
+	 * This expects multiple parameters: the time, the gap, then the user columns.
+	 */
+	@Override
+	public Object evaluate(DeferredObject[] current) throws HiveException {
+		if (gap < 0) {
+			Object gapObject = current[1].get();
+			if (gapObject == null) {
+				throw new HiveException("The session gap must not be null");
+			}
+			gap = PrimitiveObjectInspectorUtils.getLong(gapObject, gapOI);
+			if (gap < 0) {
+				throw new HiveException("The session gap must not be negative, but was " + gap);
+			}
+		}
+		if (partitionChanged(current)) {
+			session = 0;
+		}
+		Object timeObject = current[0].get();
+		if (timeObject == null) {
+			return null;
+		}
+		long time = PrimitiveObjectInspectorUtils.getLong(timeObject, timeOI);
+		if (session == 0 || time - previous > gap) {
+			++session;
+		}
+		previous = time;
+		result.set(session);
+		return result;
+	}
+
+	@Override
+	public String getDisplayString(String[] currentKey) {
+		return "SessionId";
+	}
+
+}
@@ -0,0 +1,288 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * This UDAF ranks every row of each group, without a distribute by / sort by stage.
+ * <p>
+ * The rows of a group are collected and sorted by value when the group is complete. Numeric values are also
+ * kept in a primitive long[] or double[], and the rows are sorted as an array of indices over those keys, so the
+ * sort neither boxes the keys nor moves the rows. Null values sort first, as they do in sort by.
+ * <p>
+ * The result is an array of structs of the row_number, rank and dense_rank, the value and the payload columns,
+ * ordered by value ascending, with the same numbering as {@link RowNumber}, {@link Rank} and {@link DenseRank}.
+ * <p>
+ * Every row has to be ranked, so a partial result is every row of the group and map-side aggregation reduces
+ * nothing: it only holds whole groups on the mapper's heap as well as the reducer's. Run it with
+ * hive.map.aggr=false. A group takes its rows' values and payloads as standard objects, plus roughly 150 bytes a
+ * row for the sort keys, the index arrays and the result structs, all at once while it is ranked.
+ */
+@Description(name = "sorted_rank", value = "_FUNC_(value, payload columns ...) - Returns every row of the group ranked by value, as an array of struct<row_number, rank, dense_rank, value, payload...>. Holds each whole group in memory, and map-side aggregation only adds memory, so set hive.map.aggr=false.")
+public class SortedRank extends AbstractGenericUDAFResolver {
+
+	@Override
+	public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters) throws SemanticException {
+		if (parameters.length < 1) {
+			throw new UDFArgumentLengthException("sorted_rank takes at least one argument: the value");
+		}
+		if (parameters[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			throw new UDFArgumentTypeException(0, "Only primitive values can be ranked, but " + parameters[0].getTypeName() + " was passed");
+		}
+		return new SortedRankEvaluator();
+	}
+
+	/**
+	 * Collects every row of each group.
+	 * <p>
+	 * The partial result is an array of struct&lt;value, payload...&gt;.
+	 */
+	public static class SortedRankEvaluator extends GenericUDAFEvaluator {
+
+		private static final int INITIAL_CAPACITY = 16;
+
+		// The ObjectInspectors of the rows being added: the original arguments, or the rows of a partial result
+		private ObjectInspector[] inputOIs;
+		private ListObjectInspector partialOI;
+		private StructObjectInspector partialRowOI;
+		private List<? extends StructField> partialFields;
+
+		// The standard copies held in the aggregation buffer
+		private ObjectInspector valueOI;
+		private ObjectInspector[] payloadOIs;
+		private boolean integral;
+		private boolean floating;
+
+		@Override
+		public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+			super.init(m, parameters);
+			if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+				inputOIs = parameters;
+			} else {
+				partialOI = (ListObjectInspector) parameters[0];
+				partialRowOI = (StructObjectInspector) partialOI.getListElementObjectInspector();
+				partialFields = partialRowOI.getAllStructFieldRefs();
+				inputOIs = new ObjectInspector[partialFields.size()];
+				for (int i = 0; i < inputOIs.length; i++) {
+					inputOIs[i] = partialFields.get(i).getFieldObjectInspector();
+				}
+			}
+
+			valueOI = ObjectInspectorUtils.getStandardObjectInspector(inputOIs[0]);
+			payloadOIs = new ObjectInspector[inputOIs.length - 1];
+			for (int i = 0; i < payloadOIs.length; i++) {
+				payloadOIs[i] = ObjectInspectorUtils.getStandardObjectInspector(inputOIs[i + 1]);
+			}
+			integral = false;
+			floating = false;
+			switch (((PrimitiveObjectInspector) inputOIs[0]).getPrimitiveCategory()) {
+			case BYTE:
+			case SHORT:
+			case INT:
+			case LONG:
+				integral = true;
+				break;
+			case FLOAT:
+			case DOUBLE:
+				floating = true;
+				break;
+			default:
+				break;
+			}
+
+			List<String> rowNames = new ArrayList<String>();
+			List<ObjectInspector> rowOIs = new ArrayList<ObjectInspector>();
+			if (m == Mode.FINAL || m == Mode.COMPLETE) {
+				rowNames.add("row_number");
+				rowOIs.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+				rowNames.add("rank");
+				rowOIs.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+				rowNames.add("dense_rank");
+				rowOIs.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+			}
+			rowNames.add("value");
+			rowOIs.add(valueOI);
+			for (int i = 0; i < payloadOIs.length; i++) {
+				rowNames.add("payload" + (i + 1));
+				rowOIs.add(payloadOIs[i]);
+			}
+			return ObjectInspectorFactory.getStandardListObjectInspector(
+					ObjectInspectorFactory.getStandardStructObjectInspector(rowNames, rowOIs));
+		}
+
+		/**
+		 * The rows of a group, in the order they were added, with the numeric sort keys alongside.
+		 */
+		static class SortedRankBuffer implements AggregationBuffer {
+			List<Object[]> rows;
+			long[] longKeys;
+			double[] doubleKeys;
+		}
+
+		@Override
+		public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+			SortedRankBuffer buffer = new SortedRankBuffer();
+			reset(buffer);
+			return buffer;
+		}
+
+		@Override
+		public void reset(AggregationBuffer agg) throws HiveException {
+			SortedRankBuffer buffer = (SortedRankBuffer) agg;
+			buffer.rows = new ArrayList<Object[]>();
+			buffer.longKeys = integral ? new long[INITIAL_CAPACITY] : null;
+			buffer.doubleKeys = floating ? new double[INITIAL_CAPACITY] : null;
+		}
+
+		@Override
+		public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+			add((SortedRankBuffer) agg, parameters);
+		}
+
+		@Override
+		public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+			return ((SortedRankBuffer) agg).rows;
+		}
+
+		@Override
+		public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+			if (partial == null) {
+				return;
+			}
+			SortedRankBuffer buffer = (SortedRankBuffer) agg;
+			Object[] fields = new Object[partialFields.size()];
+			int length = partialOI.getListLength(partial);
+			for (int i = 0; i < length; i++) {
+				Object row = partialOI.getListElement(partial, i);
+				for (int j = 0; j < fields.length; j++) {
+					fields[j] = partialRowOI.getStructFieldData(row, partialFields.get(j));
+				}
+				add(buffer, fields);
+			}
+		}
+
+		@Override
+		public Object terminate(AggregationBuffer agg) throws HiveException {
+			final SortedRankBuffer buffer = (SortedRankBuffer) agg;
+			final List<Object[]> rows = buffer.rows;
+			int size = rows.size();
+
+			// Nulls first, then the sorted values
+			int[] order = new int[size];
+			int nulls = 0;
+			for (int i = 0; i < size; i++) {
+				if (rows.get(i)[0] == null) {
+					order[nulls++] = i;
+				}
+			}
+			for (int i = 0, next = nulls; i < size; i++) {
+				if (rows.get(i)[0] != null) {
+					order[next++] = i;
+				}
+			}
+			IndexSort sort;
+			if (integral) {
+				sort = new IndexSort.LongKeys(buffer.longKeys);
+			} else if (floating) {
+				sort = new IndexSort.DoubleKeys(buffer.doubleKeys);
+			} else {
+				sort = new IndexSort() {
+					@Override
+					int compare(int a, int b) {
+						return ObjectInspectorUtils.compare(rows.get(a)[0], valueOI, rows.get(b)[0], valueOI);
+					}
+				};
+			}
+			sort.sort(order, nulls, size);
+
+			List<Object[]> result = new ArrayList<Object[]>(size);
+			LongWritable rank = null;
+			LongWritable denseRank = null;
+			for (int i = 0; i < size; i++) {
+				Object[] row = rows.get(order[i]);
+				boolean tied = i > 0 && (i < nulls || (i > nulls && sort.compare(order[i - 1], order[i]) == 0));
+				if (!tied) {
+					rank = new LongWritable(i + 1);
+					denseRank = new LongWritable(denseRank == null ? 1 : denseRank.get() + 1);
+				}
+				Object[] ranked = new Object[row.length + 3];
+				ranked[0] = new LongWritable(i + 1);
+				ranked[1] = rank;
+				ranked[2] = denseRank;
+				System.arraycopy(row, 0, ranked, 3, row.length);
+				result.add(ranked);
+			}
+			return result;
+		}
+
+		/**
+		 * Adds standard copies of a row, and its numeric sort key, to the buffer.
+		 */
+		private void add(SortedRankBuffer buffer, Object[] fields) {
+			Object[] row = new Object[payloadOIs.length + 1];
+			row[0] = ObjectInspectorUtils.copyToStandardObject(fields[0], inputOIs[0]);
+			for (int i = 0; i < payloadOIs.length; i++) {
+				row[i + 1] = ObjectInspectorUtils.copyToStandardObject(fields[i + 1], inputOIs[i + 1]);
+			}
+			int index = buffer.rows.size();
+			buffer.rows.add(row);
+			if (integral) {
+				if (index == buffer.longKeys.length) {
+					long[] bigger = new long[index * 2];
+					System.arraycopy(buffer.longKeys, 0, bigger, 0, index);
+					buffer.longKeys = bigger;
+				}
+				if (fields[0] != null) {
+					buffer.longKeys[index] = PrimitiveObjectInspectorUtils.getLong(fields[0], (PrimitiveObjectInspector) inputOIs[0]);
+				}
+			} else if (floating) {
+				if (index == buffer.doubleKeys.length) {
+					double[] bigger = new double[index * 2];
+					System.arraycopy(buffer.doubleKeys, 0, bigger, 0, index);
+					buffer.doubleKeys = bigger;
+				}
+				if (fields[0] != null) {
+					buffer.doubleKeys[index] = PrimitiveObjectInspectorUtils.getDouble(fields[0], (PrimitiveObjectInspector) inputOIs[0]);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,338 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFParameterInfo;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFResolver2;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * This UDAF sums a numeric column, with an evaluator specialized for the type of the column.
+ * <p>
+ * Integer columns are summed into a primitive long and return a bigint, so int columns no longer overflow at
+ * 2^31. Floating point columns, and strings, are summed into a primitive double. The aggregation buffers are
+ * mutable primitives and the partial results are reused writables, so nothing is boxed per row and merging a
+ * partial is a single addition. The sum of no values, or only nulls, is null.
+ */
+@Description(name = "sum", value = "_FUNC_(x) - Returns the sum of a set of numbers")
+public class Sum implements GenericUDAFResolver2 {
+
+	@Override
+	public GenericUDAFEvaluator getEvaluator(GenericUDAFParameterInfo info) throws SemanticException {
+		if (info.isAllColumns()) {
+			throw new SemanticException("The specified syntax for UDAF invocation is invalid.");
+		}
+		return getEvaluator(info.getParameters());
+	}
+
+	@Override
+	public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters) throws SemanticException {
+		if (parameters.length != 1) {
+			throw new UDFArgumentLengthException("Exactly one argument is expected.");
+		}
+		if (parameters[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			throw new UDFArgumentTypeException(0, "Only numeric or string type arguments are accepted but " + parameters[0].getTypeName() + " is passed.");
+		}
+		switch (((PrimitiveTypeInfo) parameters[0]).getPrimitiveCategory()) {
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+			return new SumLongEvaluator();
+		case FLOAT:
+		case DOUBLE:
+		case STRING:
+			return isCompensated() ? new KahanSumDoubleEvaluator() : new SumDoubleEvaluator();
+		default:
+			throw new UDFArgumentTypeException(0, "Only numeric or string type arguments are accepted but " + parameters[0].getTypeName() + " is passed.");
+		}
+	}
+
+	/**
+	 * @return true to sum floating point values with Kahan compensation
+	 */
+	protected boolean isCompensated() {
+		return false;
+	}
+
+	/**
+	 * Sums integer values into a long.
+	 */
+	public static class SumLongEvaluator extends GenericUDAFEvaluator {
+
+		private PrimitiveObjectInspector inputOI;
+		private final LongWritable result = new LongWritable();
+
+		static class SumLongBuffer implements AggregationBuffer {
+			boolean empty;
+			long sum;
+		}
+
+		@Override
+		public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+			super.init(m, parameters);
+			inputOI = (PrimitiveObjectInspector) parameters[0];
+			return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+		}
+
+		@Override
+		public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+			SumLongBuffer buffer = new SumLongBuffer();
+			reset(buffer);
+			return buffer;
+		}
+
+		@Override
+		public void reset(AggregationBuffer agg) throws HiveException {
+			SumLongBuffer buffer = (SumLongBuffer) agg;
+			buffer.empty = true;
+			buffer.sum = 0;
+		}
+
+		@Override
+		public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+			merge(agg, parameters[0]);
+		}
+
+		@Override
+		public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+			return terminate(agg);
+		}
+
+		@Override
+		public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+			if (partial != null) {
+				SumLongBuffer buffer = (SumLongBuffer) agg;
+				buffer.empty = false;
+				buffer.sum += PrimitiveObjectInspectorUtils.getLong(partial, inputOI);
+			}
+		}
+
+		@Override
+		public Object terminate(AggregationBuffer agg) throws HiveException {
+			SumLongBuffer buffer = (SumLongBuffer) agg;
+			if (buffer.empty) {
+				return null;
+			}
+			result.set(buffer.sum);
+			return result;
+		}
+	}
+
+	/**
+	 * Sums floating point values, or strings holding them, into a double.
+	 */
+	public static class SumDoubleEvaluator extends GenericUDAFEvaluator {
+
+		private PrimitiveObjectInspector inputOI;
+		private final DoubleWritable result = new DoubleWritable();
+
+		static class SumDoubleBuffer implements AggregationBuffer {
+			boolean empty;
+			double sum;
+		}
+
+		@Override
+		public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+			super.init(m, parameters);
+			inputOI = (PrimitiveObjectInspector) parameters[0];
+			return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+		}
+
+		@Override
+		public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+			SumDoubleBuffer buffer = new SumDoubleBuffer();
+			reset(buffer);
+			return buffer;
+		}
+
+		@Override
+		public void reset(AggregationBuffer agg) throws HiveException {
+			SumDoubleBuffer buffer = (SumDoubleBuffer) agg;
+			buffer.empty = true;
+			buffer.sum = 0;
+		}
+
+		@Override
+		public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+			merge(agg, parameters[0]);
+		}
+
+		@Override
+		public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+			return terminate(agg);
+		}
+
+		@Override
+		public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+			if (partial != null) {
+				SumDoubleBuffer buffer = (SumDoubleBuffer) agg;
+				buffer.empty = false;
+				buffer.sum += PrimitiveObjectInspectorUtils.getDouble(partial, inputOI);
+			}
+		}
+
+		@Override
+		public Object terminate(AggregationBuffer agg) throws HiveException {
+			SumDoubleBuffer buffer = (SumDoubleBuffer) agg;
+			if (buffer.empty) {
+				return null;
+			}
+			result.set(buffer.sum);
+			return result;
+		}
+	}
+
+	/**
+	 * Sums floating point values, or strings holding them, into a double with Kahan compensation, so that the
+	 * error does not grow with the number of values.
+	 * <p>
+	 * The partial result is a struct of the sum and the compensation, so that no precision is lost between the
+	 * map and reduce sides.
+	 */
+	public static class KahanSumDoubleEvaluator extends GenericUDAFEvaluator {
+
+		// For PARTIAL1 and COMPLETE: the original argument
+		private PrimitiveObjectInspector inputOI;
+
+		// For PARTIAL2 and FINAL: the partial struct
+		private StructObjectInspector partialOI;
+		private StructField sumField;
+		private StructField compensationField;
+		private PrimitiveObjectInspector sumOI;
+		private PrimitiveObjectInspector compensationOI;
+
+		private final DoubleWritable result = new DoubleWritable();
+		private final DoubleWritable partialSum = new DoubleWritable();
+		private final DoubleWritable partialCompensation = new DoubleWritable();
+		private final Object[] partial = new Object[] {partialSum, partialCompensation};
+
+		static class KahanSumBuffer implements AggregationBuffer {
+			boolean empty;
+			double sum;
+			double compensation;	// The low-order bits lost from sum, to be added back
+		}
+
+		@Override
+		public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+			super.init(m, parameters);
+			if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+				inputOI = (PrimitiveObjectInspector) parameters[0];
+			} else {
+				partialOI = (StructObjectInspector) parameters[0];
+				sumField = partialOI.getStructFieldRef("sum");
+				compensationField = partialOI.getStructFieldRef("compensation");
+				sumOI = (PrimitiveObjectInspector) sumField.getFieldObjectInspector();
+				compensationOI = (PrimitiveObjectInspector) compensationField.getFieldObjectInspector();
+			}
+			if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2) {
+				List<String> names = new ArrayList<String>(2);
+				List<ObjectInspector> ois = new ArrayList<ObjectInspector>(2);
+				names.add("sum");
+				ois.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+				names.add("compensation");
+				ois.add(PrimitiveObjectInspectorFactory.writableDoubleObjectInspector);
+				return ObjectInspectorFactory.getStandardStructObjectInspector(names, ois);
+			}
+			return PrimitiveObjectInspectorFactory.writableDoubleObjectInspector;
+		}
+
+		@Override
+		public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+			KahanSumBuffer buffer = new KahanSumBuffer();
+			reset(buffer);
+			return buffer;
+		}
+
+		@Override
+		public void reset(AggregationBuffer agg) throws HiveException {
+			KahanSumBuffer buffer = (KahanSumBuffer) agg;
+			buffer.empty = true;
+			buffer.sum = 0;
+			buffer.compensation = 0;
+		}
+
+		@Override
+		public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+			if (parameters[0] != null) {
+				KahanSumBuffer buffer = (KahanSumBuffer) agg;
+				buffer.empty = false;
+				add(buffer, PrimitiveObjectInspectorUtils.getDouble(parameters[0], inputOI));
+			}
+		}
+
+		@Override
+		public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+			KahanSumBuffer buffer = (KahanSumBuffer) agg;
+			if (buffer.empty) {
+				return null;
+			}
+			partialSum.set(buffer.sum);
+			partialCompensation.set(buffer.compensation);
+			return partial;
+		}
+
+		@Override
+		public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+			if (partial != null) {
+				KahanSumBuffer buffer = (KahanSumBuffer) agg;
+				buffer.empty = false;
+				add(buffer, PrimitiveObjectInspectorUtils.getDouble(partialOI.getStructFieldData(partial, sumField), sumOI));
+				add(buffer, PrimitiveObjectInspectorUtils.getDouble(partialOI.getStructFieldData(partial, compensationField), compensationOI));
+			}
+		}
+
+		@Override
+		public Object terminate(AggregationBuffer agg) throws HiveException {
+			KahanSumBuffer buffer = (KahanSumBuffer) agg;
+			if (buffer.empty) {
+				return null;
+			}
+			result.set(buffer.sum + buffer.compensation);
+			return result;
+		}
+
+		private static void add(KahanSumBuffer buffer, double value) {
+			double y = value + buffer.compensation;
+			double t = buffer.sum + y;
+			buffer.compensation = y - (t - buffer.sum);
+			buffer.sum = t;
+		}
+	}
+
+}
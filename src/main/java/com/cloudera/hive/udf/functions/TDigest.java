@@ -0,0 +1,316 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.io.BytesWritable;
+
+/**
+ * A merging t-digest: a summary of a distribution of doubles as a bounded number of centroids, from which
+ * quantiles can be estimated.
+ * <p>
+ * New values go into a buffer, and when it fills up the buffer and the centroids are sorted together and merged
+ * greedily. A centroid may only grow while it spans at most one unit of the scale function
+ * k(q) = compression / Z * ln(q / (1 - q)), where Z = 4 ln(n / compression) + 24 for n values. The centroid sizes
+ * shrink in proportion to q(1 - q) towards the tails, so extreme quantiles such as p99.9 stay accurate, and there
+ * are at most about 2 * compression centroids, held in primitive double[] arrays.
+ * <p>
+ * The arrays used to sort the centroids and the buffer together are only needed while merging, so they are held in
+ * a {@link Scratch} that is shared by every digest of an evaluator, and a digest only keeps its centroids and its
+ * buffer.
+ * <p>
+ * The serialized form is the compression, the minimum, the maximum and the number of centroids, followed by the
+ * mean and weight of each centroid.
+ */
+class TDigest {
+
+	static final double DEFAULT_COMPRESSION = 200;
+	static final double MIN_COMPRESSION = 10;
+	static final double MAX_COMPRESSION = 10000;
+
+	private static final int HEADER_LENGTH = 3 * 8 + 4;
+
+	private final double compression;
+	private final double[] means;
+	private final double[] weights;
+	private int centroids;
+
+	private final double[] bufferMeans;
+	private final double[] bufferWeights;
+	private int buffered;
+
+	private final Scratch scratch;
+
+	private double total;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * Space for sorting the centroids and the buffer of a digest together, which can be shared by any number of
+	 * digests that are used from the same thread.
+	 */
+	static class Scratch {
+		private double[] means = new double[0];
+		private double[] weights = new double[0];
+		private int[] order = new int[0];
+		private int[] merge = new int[0];
+		private IndexSort keys;
+
+		/**
+		 * Makes room for sorting n centroids.
+		 */
+		void ensureCapacity(int n) {
+			if (order.length < n) {
+				means = new double[n];
+				weights = new double[n];
+				order = new int[n];
+				merge = new int[n];
+				keys = new IndexSort.DoubleKeys(means);
+			}
+		}
+	}
+
+	/**
+	 * @param compression - bounds the number of centroids, and so the accuracy
+	 * @param scratch - the space to merge in, which may be shared with other digests
+	 */
+	TDigest(double compression, Scratch scratch) {
+		this.compression = compression;
+		this.scratch = scratch;
+		int capacity = 2 * (int) Math.ceil(compression) + 4;
+		int bufferCapacity = 3 * capacity;
+		means = new double[capacity];
+		weights = new double[capacity];
+		bufferMeans = new double[bufferCapacity];
+		bufferWeights = new double[bufferCapacity];
+	}
+
+	double getCompression() {
+		return compression;
+	}
+
+	void clear() {
+		centroids = 0;
+		buffered = 0;
+		total = 0;
+		min = Double.POSITIVE_INFINITY;
+		max = Double.NEGATIVE_INFINITY;
+	}
+
+	void add(double value) {
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		add(value, 1);
+	}
+
+	private void add(double mean, double weight) {
+		if (buffered == bufferMeans.length) {
+			compress();
+		}
+		bufferMeans[buffered] = mean;
+		bufferWeights[buffered] = weight;
+		buffered++;
+		total += weight;
+	}
+
+	/**
+	 * Merges the buffer into the centroids.
+	 */
+	private void compress() {
+		if (buffered == 0) {
+			return;
+		}
+		int n = centroids + buffered;
+		scratch.ensureCapacity(n);
+		double[] sortMeans = scratch.means;
+		double[] sortWeights = scratch.weights;
+		int[] order = scratch.order;
+		System.arraycopy(means, 0, sortMeans, 0, centroids);
+		System.arraycopy(weights, 0, sortWeights, 0, centroids);
+		System.arraycopy(bufferMeans, 0, sortMeans, centroids, buffered);
+		System.arraycopy(bufferWeights, 0, sortWeights, centroids, buffered);
+		for (int i = 0; i < n; i++) {
+			order[i] = i;
+		}
+		scratch.keys.sort(order, scratch.merge, 0, n);
+
+		centroids = 0;
+		buffered = 0;
+		double mean = sortMeans[order[0]];
+		double weight = sortWeights[order[0]];
+		double weightSoFar = 0;
+		double scale = (4 * Math.log(Math.max(1, total / compression)) + 24) / compression;
+		double qLimit = qLimit(0, scale);
+		for (int i = 1; i < n; i++) {
+			double nextMean = sortMeans[order[i]];
+			double nextWeight = sortWeights[order[i]];
+			if ((weightSoFar + weight + nextWeight) / total <= qLimit) {
+				weight += nextWeight;
+				mean += (nextMean - mean) * nextWeight / weight;
+			} else {
+				means[centroids] = mean;
+				weights[centroids] = weight;
+				centroids++;
+				weightSoFar += weight;
+				qLimit = qLimit(weightSoFar / total, scale);
+				mean = nextMean;
+				weight = nextWeight;
+			}
+		}
+		means[centroids] = mean;
+		weights[centroids] = weight;
+		centroids++;
+	}
+
+	/**
+	 * @param q - the quantile that a centroid starts at
+	 * @param scale - Z / compression
+	 * @return the largest quantile that the centroid may reach, one unit of k further on
+	 */
+	private static double qLimit(double q, double scale) {
+		if (q <= 0) {
+			return 0;
+		}
+		if (q >= 1) {
+			return 1;
+		}
+		return 1 / (1 + Math.exp(-(Math.log(q / (1 - q)) + scale)));
+	}
+
+	/**
+	 * @return the number of values that have been added
+	 */
+	double size() {
+		return total;
+	}
+
+	/**
+	 * Estimates a quantile by interpolating between the centroids, and between the outer centroids and the
+	 * minimum and maximum.
+	 *
+	 * @param q - the quantile, from 0 to 1
+	 * @return the estimate, or NaN if no values have been added
+	 */
+	double quantile(double q) {
+		compress();
+		if (centroids == 0) {
+			return Double.NaN;
+		}
+		if (centroids == 1) {
+			return means[0];
+		}
+		double index = q * total;
+		if (index <= weights[0] / 2) {
+			return min + (means[0] - min) * index / (weights[0] / 2);
+		}
+		double weightSoFar = weights[0] / 2;
+		for (int i = 0; i < centroids - 1; i++) {
+			double step = (weights[i] + weights[i + 1]) / 2;
+			if (weightSoFar + step >= index) {
+				return means[i] + (means[i + 1] - means[i]) * (index - weightSoFar) / step;
+			}
+			weightSoFar += step;
+		}
+		double last = weights[centroids - 1] / 2;
+		return means[centroids - 1] + (max - means[centroids - 1]) * Math.min(1, (index - weightSoFar) / last);
+	}
+
+	/**
+	 * Reads the compression of a serialized digest.
+	 *
+	 * @throws HiveException if the bytes are not a digest
+	 */
+	static double readCompression(byte[] bytes, int start, int length) throws HiveException {
+		if (length < HEADER_LENGTH) {
+			throw new HiveException("Not a t-digest");
+		}
+		return Double.longBitsToDouble(getLong(bytes, start));
+	}
+
+	/**
+	 * Merges a serialized digest into this one.
+	 *
+	 * @throws HiveException if the bytes are not a digest
+	 */
+	void merge(byte[] bytes, int start, int length) throws HiveException {
+		readCompression(bytes, start, length);
+		int count = getInt(bytes, start + 24);
+		if (count < 0 || length != HEADER_LENGTH + 16 * count) {
+			throw new HiveException("Truncated t-digest");
+		}
+		if (count == 0) {
+			return;
+		}
+		min = Math.min(min, Double.longBitsToDouble(getLong(bytes, start + 8)));
+		max = Math.max(max, Double.longBitsToDouble(getLong(bytes, start + 16)));
+		int offset = start + HEADER_LENGTH;
+		for (int i = 0; i < count; i++) {
+			add(Double.longBitsToDouble(getLong(bytes, offset)), Double.longBitsToDouble(getLong(bytes, offset + 8 * count)));
+			offset += 8;
+		}
+	}
+
+	/**
+	 * Serializes the digest into a reusable writable.
+	 */
+	void serialize(BytesWritable out) {
+		compress();
+		out.setSize(HEADER_LENGTH + 16 * centroids);
+		byte[] bytes = out.getBytes();
+		putLong(bytes, 0, Double.doubleToLongBits(compression));
+		putLong(bytes, 8, Double.doubleToLongBits(min));
+		putLong(bytes, 16, Double.doubleToLongBits(max));
+		putInt(bytes, 24, centroids);
+		int offset = HEADER_LENGTH;
+		for (int i = 0; i < centroids; i++) {
+			putLong(bytes, offset, Double.doubleToLongBits(means[i]));
+			putLong(bytes, offset + 8 * centroids, Double.doubleToLongBits(weights[i]));
+			offset += 8;
+		}
+	}
+
+	private static void putLong(byte[] bytes, int offset, long value) {
+		for (int i = 0; i < 8; i++) {
+			bytes[offset + i] = (byte) (value >>> (56 - 8 * i));
+		}
+	}
+
+	private static void putInt(byte[] bytes, int offset, int value) {
+		for (int i = 0; i < 4; i++) {
+			bytes[offset + i] = (byte) (value >>> (24 - 8 * i));
+		}
+	}
+
+	private static long getLong(byte[] bytes, int offset) {
+		long value = 0;
+		for (int i = 0; i < 8; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+
+	private static int getInt(byte[] bytes, int offset) {
+		int value = 0;
+		for (int i = 0; i < 4; i++) {
+			value = (value << 8) | (bytes[offset + i] & 0xff);
+		}
+		return value;
+	}
+
+}
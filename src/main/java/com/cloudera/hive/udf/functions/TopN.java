@@ -0,0 +1,332 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentLengthException;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentTypeException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.parse.SemanticException;
+import org.apache.hadoop.hive.ql.udf.generic.AbstractGenericUDAFResolver;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDAFEvaluator;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * This UDAF returns the rows of each group whose rank() is at most n, without a distribute by / sort by stage.
+ * <p>
+ * Each group keeps only the candidate rows that can still make the cut, sorted by value, so map-side
+ * aggregation ships O(n) rows per group rather than every row. Ties are kept exactly as rank() would
+ * rank them: with n = 2 and values 1, 2, 2, 4 all three of 1, 2 and 2 are returned.
+ * <p>
+ * The result is an array of structs of the rank, the value and the payload columns, in rank order. Values rank in
+ * ascending order, so the smallest values are kept; {@link TopNDesc} ranks them in descending order instead.
+ */
+@Description(name = "top_n", value = "_FUNC_(value, n, payload columns ...) - Returns the rows of the group whose rank by value is at most n, as an array of struct<rank, value, payload...>.")
+public class TopN extends AbstractGenericUDAFResolver {
+
+	@Override
+	public GenericUDAFEvaluator getEvaluator(TypeInfo[] parameters) throws SemanticException {
+		if (parameters.length < 2) {
+			throw new UDFArgumentLengthException("top_n takes at least two arguments: the value and n");
+		}
+		if (parameters[0].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			throw new UDFArgumentTypeException(0, "Only primitive values can be ranked, but " + parameters[0].getTypeName() + " was passed");
+		}
+		if (parameters[1].getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			throw new UDFArgumentTypeException(1, "n must be an integer, but " + parameters[1].getTypeName() + " was passed");
+		}
+		switch (((PrimitiveTypeInfo) parameters[1]).getPrimitiveCategory()) {
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+			break;
+		default:
+			throw new UDFArgumentTypeException(1, "n must be an integer, but " + parameters[1].getTypeName() + " was passed");
+		}
+		return new TopNEvaluator(isDense(), isDescending());
+	}
+
+	/**
+	 * @return true for dense_rank() semantics, false for rank() semantics
+	 */
+	protected boolean isDense() {
+		return false;
+	}
+
+	/**
+	 * @return true to rank the largest values first, false to rank the smallest values first
+	 */
+	protected boolean isDescending() {
+		return false;
+	}
+
+	/**
+	 * Keeps, for each group, the rows with the values that rank first, grouped by value.
+	 * <p>
+	 * The partial result is a struct of n and an array of struct&lt;value, payload...&gt;.
+	 */
+	public static class TopNEvaluator extends GenericUDAFEvaluator {
+
+		private final boolean dense;
+		private final int order;	// 1 to rank in ascending order, -1 in descending order
+
+		// For PARTIAL1 and COMPLETE: the original arguments
+		private ObjectInspector inputValueOI;
+		private PrimitiveObjectInspector nOI;
+		private ObjectInspector[] inputPayloadOIs;
+
+		// For PARTIAL2 and FINAL: the partial struct
+		private StructObjectInspector partialOI;
+		private StructField nField;
+		private StructField rowsField;
+		private ListObjectInspector rowsOI;
+		private StructObjectInspector rowOI;
+		private List<? extends StructField> rowFields;
+		private ObjectInspector[] partialPayloadOIs;
+
+		// The standard copies held in the aggregation buffer
+		private ObjectInspector valueOI;
+		private ObjectInspector[] payloadOIs;
+		private Comparator<Object> comparator;
+		private Object[] payload; // Scratch for the payload of the row being added
+
+		public TopNEvaluator(boolean dense, boolean descending) {
+			this.dense = dense;
+			this.order = descending ? -1 : 1;
+		}
+
+		@Override
+		public ObjectInspector init(Mode m, ObjectInspector[] parameters) throws HiveException {
+			super.init(m, parameters);
+			ObjectInspector[] originalPayloadOIs;
+			ObjectInspector originalValueOI;
+			if (m == Mode.PARTIAL1 || m == Mode.COMPLETE) {
+				inputValueOI = parameters[0];
+				nOI = (PrimitiveObjectInspector) parameters[1];
+				inputPayloadOIs = new ObjectInspector[parameters.length - 2];
+				System.arraycopy(parameters, 2, inputPayloadOIs, 0, inputPayloadOIs.length);
+				originalValueOI = inputValueOI;
+				originalPayloadOIs = inputPayloadOIs;
+			} else {
+				partialOI = (StructObjectInspector) parameters[0];
+				nField = partialOI.getStructFieldRef("n");
+				rowsField = partialOI.getStructFieldRef("rows");
+				rowsOI = (ListObjectInspector) rowsField.getFieldObjectInspector();
+				rowOI = (StructObjectInspector) rowsOI.getListElementObjectInspector();
+				rowFields = rowOI.getAllStructFieldRefs();
+				originalValueOI = rowFields.get(0).getFieldObjectInspector();
+				partialPayloadOIs = new ObjectInspector[rowFields.size() - 1];
+				for (int i = 0; i < partialPayloadOIs.length; i++) {
+					partialPayloadOIs[i] = rowFields.get(i + 1).getFieldObjectInspector();
+				}
+				originalPayloadOIs = partialPayloadOIs;
+			}
+
+			valueOI = ObjectInspectorUtils.getStandardObjectInspector(originalValueOI);
+			payloadOIs = new ObjectInspector[originalPayloadOIs.length];
+			for (int i = 0; i < payloadOIs.length; i++) {
+				payloadOIs[i] = ObjectInspectorUtils.getStandardObjectInspector(originalPayloadOIs[i]);
+			}
+			payload = new Object[payloadOIs.length];
+			comparator = new Comparator<Object>() {
+				@Override
+				public int compare(Object a, Object b) {
+					return order * ObjectInspectorUtils.compare(a, valueOI, b, valueOI);
+				}
+			};
+
+			List<String> rowNames = new ArrayList<String>();
+			List<ObjectInspector> rowOIs = new ArrayList<ObjectInspector>();
+			if (m == Mode.PARTIAL1 || m == Mode.PARTIAL2) {
+				addRowFields(rowNames, rowOIs);
+				List<String> names = new ArrayList<String>();
+				List<ObjectInspector> ois = new ArrayList<ObjectInspector>();
+				names.add("n");
+				ois.add(PrimitiveObjectInspectorFactory.writableIntObjectInspector);
+				names.add("rows");
+				ois.add(ObjectInspectorFactory.getStandardListObjectInspector(
+						ObjectInspectorFactory.getStandardStructObjectInspector(rowNames, rowOIs)));
+				return ObjectInspectorFactory.getStandardStructObjectInspector(names, ois);
+			} else {
+				rowNames.add("rank");
+				rowOIs.add(PrimitiveObjectInspectorFactory.writableLongObjectInspector);
+				addRowFields(rowNames, rowOIs);
+				return ObjectInspectorFactory.getStandardListObjectInspector(
+						ObjectInspectorFactory.getStandardStructObjectInspector(rowNames, rowOIs));
+			}
+		}
+
+		private void addRowFields(List<String> names, List<ObjectInspector> ois) {
+			names.add("value");
+			ois.add(valueOI);
+			for (int i = 0; i < payloadOIs.length; i++) {
+				names.add("payload" + (i + 1));
+				ois.add(payloadOIs[i]);
+			}
+		}
+
+		/**
+		 * The candidate rows of a group, keyed by value.
+		 */
+		static class TopNBuffer implements AggregationBuffer {
+			int n;
+			int rows;
+			TreeMap<Object, List<Object[]>> values;
+		}
+
+		@Override
+		public AggregationBuffer getNewAggregationBuffer() throws HiveException {
+			TopNBuffer buffer = new TopNBuffer();
+			reset(buffer);
+			return buffer;
+		}
+
+		@Override
+		public void reset(AggregationBuffer agg) throws HiveException {
+			TopNBuffer buffer = (TopNBuffer) agg;
+			buffer.n = -1;
+			buffer.rows = 0;
+			buffer.values = new TreeMap<Object, List<Object[]>>(comparator);
+		}
+
+		@Override
+		public void iterate(AggregationBuffer agg, Object[] parameters) throws HiveException {
+			TopNBuffer buffer = (TopNBuffer) agg;
+			if (buffer.n < 0) {
+				if (parameters[1] == null) {
+					throw new HiveException("n must not be null");
+				}
+				buffer.n = Math.max(0, PrimitiveObjectInspectorUtils.getInt(parameters[1], nOI));
+			}
+			for (int i = 0; i < payload.length; i++) {
+				payload[i] = parameters[i + 2];
+			}
+			add(buffer, parameters[0], inputValueOI, inputPayloadOIs);
+		}
+
+		@Override
+		public Object terminatePartial(AggregationBuffer agg) throws HiveException {
+			TopNBuffer buffer = (TopNBuffer) agg;
+			List<Object[]> rows = new ArrayList<Object[]>(buffer.rows);
+			for (List<Object[]> tied : buffer.values.values()) {
+				rows.addAll(tied);
+			}
+			return new Object[] {new IntWritable(buffer.n), rows};
+		}
+
+		@Override
+		public void merge(AggregationBuffer agg, Object partial) throws HiveException {
+			if (partial == null) {
+				return;
+			}
+			TopNBuffer buffer = (TopNBuffer) agg;
+			Object n = partialOI.getStructFieldData(partial, nField);
+			int partialN = PrimitiveObjectInspectorUtils.getInt(n, (PrimitiveObjectInspector) nField.getFieldObjectInspector());
+			if (partialN < 0) {
+				return; // An empty group
+			}
+			buffer.n = partialN;
+			Object rows = partialOI.getStructFieldData(partial, rowsField);
+			int length = rowsOI.getListLength(rows);
+			for (int i = 0; i < length; i++) {
+				Object row = rowsOI.getListElement(rows, i);
+				for (int j = 0; j < payload.length; j++) {
+					payload[j] = rowOI.getStructFieldData(row, rowFields.get(j + 1));
+				}
+				add(buffer, rowOI.getStructFieldData(row, rowFields.get(0)), rowFields.get(0).getFieldObjectInspector(), partialPayloadOIs);
+			}
+		}
+
+		@Override
+		public Object terminate(AggregationBuffer agg) throws HiveException {
+			TopNBuffer buffer = (TopNBuffer) agg;
+			List<Object[]> result = new ArrayList<Object[]>(buffer.rows);
+			long rowsBefore = 0;
+			long distinctBefore = 0;
+			for (List<Object[]> tied : buffer.values.values()) {
+				LongWritable rank = new LongWritable(dense ? distinctBefore + 1 : rowsBefore + 1);
+				for (Object[] row : tied) {
+					Object[] ranked = new Object[row.length + 1];
+					ranked[0] = rank;
+					System.arraycopy(row, 0, ranked, 1, row.length);
+					result.add(ranked);
+				}
+				rowsBefore += tied.size();
+				distinctBefore++;
+			}
+			return result;
+		}
+
+		/**
+		 * Adds a row to the buffer if it can still be in the top n, then drops the rows that no longer can be.
+		 * The payload of the row is in the scratch payload array.
+		 */
+		private void add(TopNBuffer buffer, Object value, ObjectInspector oi, ObjectInspector[] originalPayloadOIs) {
+			TreeMap<Object, List<Object[]>> values = buffer.values;
+			boolean full = dense ? values.size() >= buffer.n : buffer.rows >= buffer.n;
+			if (full && (values.isEmpty() || order * ObjectInspectorUtils.compare(value, oi, values.lastKey(), valueOI) > 0)) {
+				return; // Ranks after everything we are keeping, so it cannot be in the top n
+			}
+
+			Object[] row = new Object[payload.length + 1];
+			row[0] = ObjectInspectorUtils.copyToStandardObject(value, oi);
+			for (int i = 0; i < payload.length; i++) {
+				row[i + 1] = ObjectInspectorUtils.copyToStandardObject(payload[i], originalPayloadOIs[i]);
+			}
+			List<Object[]> tied = values.get(row[0]);
+			if (tied == null) {
+				tied = new ArrayList<Object[]>(1);
+				values.put(row[0], tied);
+			}
+			tied.add(row);
+			buffer.rows++;
+
+			// Drop the last ranked value while its rows rank after n
+			while (!values.isEmpty()) {
+				Map.Entry<Object, List<Object[]>> last = values.lastEntry();
+				boolean outside = dense ? values.size() > buffer.n : buffer.rows - last.getValue().size() >= buffer.n;
+				if (!outside) {
+					break;
+				}
+				values.pollLastEntry();
+				buffer.rows -= last.getValue().size();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import org.apache.hadoop.hive.ql.exec.Description;
+
+/**
+ * This UDAF returns the rows of each group whose rank() by value descending is at most n, such as the n most
+ * expensive items, without a distribute by / sort by stage.
+ *
+ * @see TopN
+ */
+@Description(name = "top_n_desc", value = "_FUNC_(value, n, payload columns ...) - Returns the rows of the group whose rank by value descending is at most n, as an array of struct<rank, value, payload...>.")
+public class TopNDesc extends TopN {
+
+	@Override
+	protected boolean isDescending() {
+		return true;
+	}
+
+}
@@ -0,0 +1,176 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hive.ql.exec.Description;
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.UDFType;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * This UDF provides globally unique row ids without funnelling every row through a single reducer.
+ * <p>
+ * Each JVM counts its rows from 0 and puts a number unique to the JVM in the high bits of the id, so tasks never need
+ * to coordinate and throughput scales with the number of tasks. The low {@link #COUNTER_BITS} bits of an id are the
+ * row's position in the JVM's counter, which every task and every instance of the UDF in the JVM shares.
+ * <p>
+ * Hive 0.9 does not hand the job configuration to UDFs, so the JVM is identified by the task attempt it was started
+ * for: the hadoop.tasklog.taskid system property that MR1 gives each task JVM, or the CONTAINER_ID environment
+ * variable under YARN. Both are set once per JVM, so with JVM reuse or uber mode the later tasks of a JVM still see
+ * its first attempt, which is why the counter is shared rather than restarted. The number is built from the whole
+ * attempt id, including the attempt number, or from the whole container id, including the application attempt, so
+ * a speculative or retried attempt that goes on to run other tasks in its own JVM gets a number of its own. Ids that
+ * do not fit the number's bits are rejected rather than truncated.
+ * <p>
+ * Hive's local mode runs the tasks of a job one after another in a single JVM with neither variable set, so there the
+ * number falls back to 0.
+ */
+@Description(name = "unique_row_id", value = "_FUNC_() - Returns a globally unique bigint id for each row, made of a number unique to the task JVM and a row counter.")
+@UDFType(deterministic = false, stateful = true)
+public class UniqueRowId extends GenericUDF {
+
+	private static final Log LOG = LogFactory.getLog(UniqueRowId.class.getName());
+
+	/** The number of low bits that hold the JVM's row counter. */
+	public static final int COUNTER_BITS = 40;
+
+	static final String TASK_ID_PROPERTY = "hadoop.tasklog.taskid";
+	static final String CONTAINER_ID_VARIABLE = "CONTAINER_ID";
+
+	static final long MAX_COUNTER = (1L << COUNTER_BITS) - 1;
+
+	// The JVM number has 23 bits, which keeps the ids positive
+	static final int ATTEMPT_BITS = 3;
+	static final int TASK_INDEX_BITS = 19;
+	static final int CONTAINER_BITS = 20;
+
+	// Shared by every task that runs in this JVM
+	private static long jvmBase = -1;
+	private static final AtomicLong jvmCounter = new AtomicLong();
+
+	private long base = -1;
+	private final LongWritable result = new LongWritable();
+
+	@Override
+	public ObjectInspector initialize(ObjectInspector[] arguments) throws UDFArgumentException {
+		if (arguments.length != 0) {
+			throw new UDFArgumentException("unique_row_id takes no arguments");
+		}
+		return PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+	}
+
+	@Override
+	public Object evaluate(DeferredObject[] arguments) throws HiveException {
+		if (base < 0) {
+			// Only known once we are running inside a task, not when the query is compiled
+			base = claimBase();
+		}
+		long counter = jvmCounter.getAndIncrement();
+		if (counter > MAX_COUNTER) {
+			throw new HiveException("unique_row_id has run out of ids: more than " + MAX_COUNTER + " rows in one JVM");
+		}
+		result.set(base | counter);
+		return result;
+	}
+
+	/**
+	 * Works out the high bits of the ids the first time any instance asks in this JVM, so that tasks that reuse
+	 * the JVM keep the same ones and share the counter.
+	 */
+	private static synchronized long claimBase() throws HiveException {
+		if (jvmBase < 0) {
+			String taskAttemptId = System.getProperty(TASK_ID_PROPERTY);
+			Map<String, String> environment = System.getenv();
+			if (taskAttemptId == null && environment.get(CONTAINER_ID_VARIABLE) == null) {
+				LOG.warn("unique_row_id found neither the " + TASK_ID_PROPERTY + " system property nor the "
+						+ CONTAINER_ID_VARIABLE + " environment variable, so it assumes Hive's local mode and uses 0");
+			}
+			jvmBase = ((long) jvmNumber(taskAttemptId, environment)) << COUNTER_BITS;
+		}
+		return jvmBase;
+	}
+
+	@Override
+	public String getDisplayString(String[] children) {
+		return "unique_row_id()";
+	}
+
+	/**
+	 * Works out a number that is unique to the running JVM within its job.
+	 *
+	 * @param taskAttemptId - the MR1 task attempt id, such as attempt_201210101010_0001_m_000003_0, or null
+	 * @param environment - the environment, consulted for the YARN container id
+	 * @return for MR1, (task index * 2, plus one for reduce tasks) * 8 + the attempt number; for YARN, the
+	 *         application attempt * 2^20 + the container sequence number; or 0 in local mode, when neither is set
+	 * @throws HiveException when the id is malformed, or too large for the bits of the number
+	 */
+	static int jvmNumber(String taskAttemptId, Map<String, String> environment) throws HiveException {
+		if (taskAttemptId != null) {
+			String[] parts = taskAttemptId.split("_");
+			if (parts.length != 6 || !parts[0].equals("attempt") || !(parts[3].equals("m") || parts[3].equals("r"))) {
+				throw new HiveException("unique_row_id cannot parse the task attempt id " + taskAttemptId);
+			}
+			int index = parse(parts[4], taskAttemptId);
+			int attempt = parse(parts[5], taskAttemptId);
+			if (index >= 1 << TASK_INDEX_BITS || attempt >= 1 << ATTEMPT_BITS) {
+				throw new HiveException("unique_row_id only supports task indices under " + (1 << TASK_INDEX_BITS)
+						+ " and attempt numbers under " + (1 << ATTEMPT_BITS) + ", but was run by " + taskAttemptId);
+			}
+			return (((index << 1) | (parts[3].equals("r") ? 1 : 0)) << ATTEMPT_BITS) | attempt;
+		}
+		String containerId = environment.get(CONTAINER_ID_VARIABLE);
+		if (containerId != null) {
+			// container_<cluster timestamp>_<application>_<application attempt>_<sequence>, perhaps with an epoch
+			String[] parts = containerId.split("_");
+			if (parts.length < 5 || !parts[0].equals("container")) {
+				throw new HiveException("unique_row_id cannot parse the container id " + containerId);
+			}
+			int applicationAttempt = parse(parts[parts.length - 2], containerId);
+			int sequence = parse(parts[parts.length - 1], containerId);
+			if (applicationAttempt >= 1 << ATTEMPT_BITS || sequence >= 1 << CONTAINER_BITS) {
+				throw new HiveException("unique_row_id only supports application attempts under " + (1 << ATTEMPT_BITS)
+						+ " and container numbers under " + (1 << CONTAINER_BITS) + ", but was run in " + containerId);
+			}
+			return (applicationAttempt << CONTAINER_BITS) | sequence;
+		}
+		return 0;
+	}
+
+	private static int parse(String number, String id) throws HiveException {
+		try {
+			int value = Integer.parseInt(number);
+			if (value < 0) {
+				throw new HiveException("unique_row_id cannot parse " + id);
+			}
+			return value;
+		} catch (NumberFormatException e) {
+			throw new HiveException("unique_row_id cannot parse " + id, e);
+		}
+	}
+
+}
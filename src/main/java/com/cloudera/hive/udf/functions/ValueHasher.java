@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import java.sql.Timestamp;
+
+import org.apache.hadoop.hive.ql.exec.UDFArgumentException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BinaryObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Computes a 64 bit hash of primitive values, for the sketches.
+ * <p>
+ * Strings and binaries are hashed straight from the bytes of their writables with MurmurHash64A, so they are never
+ * converted to a String. Numbers are hashed from their primitive value, so an int and a bigint with the same value
+ * hash the same.
+ */
+class ValueHasher {
+
+	private static final long M = 0xc6a4a7935bd1e995L;
+	private static final int R = 47;
+	private static final long SEED = 0x9e3779b97f4a7c15L;
+
+	private final PrimitiveObjectInspector oi;
+	private final PrimitiveObjectInspector.PrimitiveCategory category;
+
+	/**
+	 * @param oi - the ObjectInspector of the values
+	 * @param name - the name of the function, for the error message
+	 * @throws UDFArgumentException if the values cannot be hashed
+	 */
+	ValueHasher(ObjectInspector oi, String name) throws UDFArgumentException {
+		if (oi.getCategory() != ObjectInspector.Category.PRIMITIVE) {
+			throw new UDFArgumentException(name + " only takes primitive values, but " + oi.getTypeName() + " was passed");
+		}
+		this.oi = (PrimitiveObjectInspector) oi;
+		this.category = this.oi.getPrimitiveCategory();
+		switch (category) {
+		case BOOLEAN:
+		case BYTE:
+		case SHORT:
+		case INT:
+		case LONG:
+		case FLOAT:
+		case DOUBLE:
+		case STRING:
+		case BINARY:
+		case TIMESTAMP:
+			break;
+		default:
+			throw new UDFArgumentException(name + " cannot hash values of type " + oi.getTypeName());
+		}
+	}
+
+	/**
+	 * @param value - a value, which must not be null
+	 * @return the hash of the value
+	 */
+	long hash(Object value) {
+		switch (category) {
+		case BOOLEAN:
+			return hash(PrimitiveObjectInspectorUtils.getBoolean(value, oi) ? 1 : 0);
+		case FLOAT:
+		case DOUBLE:
+			return hash(Double.doubleToLongBits(PrimitiveObjectInspectorUtils.getDouble(value, oi)));
+		case STRING:
+			Text text = ((StringObjectInspector) oi).getPrimitiveWritableObject(value);
+			return hash(text.getBytes(), 0, text.getLength());
+		case BINARY:
+			BytesWritable bytes = ((BinaryObjectInspector) oi).getPrimitiveWritableObject(value);
+			return hash(bytes.getBytes(), 0, bytes.getLength());
+		case TIMESTAMP:
+			Timestamp timestamp = PrimitiveObjectInspectorUtils.getTimestamp(value, oi);
+			return hash(timestamp.getTime() * 1000000L + timestamp.getNanos() % 1000000);
+		default:
+			return hash(PrimitiveObjectInspectorUtils.getLong(value, oi));
+		}
+	}
+
+	/**
+	 * Hashes a long with the MurmurHash3 finalizer.
+	 */
+	static long hash(long value) {
+		long k = value + SEED;
+		k ^= k >>> 33;
+		k *= 0xff51afd7ed558ccdL;
+		k ^= k >>> 33;
+		k *= 0xc4ceb9fe1a85ec53L;
+		k ^= k >>> 33;
+		return k;
+	}
+
+	/**
+	 * Hashes a range of bytes with MurmurHash64A.
+	 */
+	static long hash(byte[] data, int start, int length) {
+		long h = SEED ^ (length * M);
+		int end = start + (length & ~7);
+		for (int i = start; i < end; i += 8) {
+			long k = (data[i] & 0xffL)
+					| (data[i + 1] & 0xffL) << 8
+					| (data[i + 2] & 0xffL) << 16
+					| (data[i + 3] & 0xffL) << 24
+					| (data[i + 4] & 0xffL) << 32
+					| (data[i + 5] & 0xffL) << 40
+					| (data[i + 6] & 0xffL) << 48
+					| (data[i + 7] & 0xffL) << 56;
+			k *= M;
+			k ^= k >>> R;
+			k *= M;
+			h ^= k;
+			h *= M;
+		}
+		switch (length & 7) {
+		case 7:
+			h ^= (data[end + 6] & 0xffL) << 48;
+		case 6:
+			h ^= (data[end + 5] & 0xffL) << 40;
+		case 5:
+			h ^= (data[end + 4] & 0xffL) << 32;
+		case 4:
+			h ^= (data[end + 3] & 0xffL) << 24;
+		case 3:
+			h ^= (data[end + 2] & 0xffL) << 16;
+		case 2:
+			h ^= (data[end + 1] & 0xffL) << 8;
+		case 1:
+			h ^= data[end] & 0xffL;
+			h *= M;
+		default:
+			break;
+		}
+		h ^= h >>> R;
+		h *= M;
+		h ^= h >>> R;
+		return h;
+	}
+
+}
@@ -0,0 +1,100 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.Charset;
+
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+/**
+ * Checks that the key matcher finds the first return column for each key name and chains it to the other return
+ * columns with the same name.
+ */
+public class KeyMatcherTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void duplicateNamesChainThroughEveryColumn() {
+        final KeyMatcher matcher = compile("a", "b", "a", "c", "b", "a");
+        assertChain(matcher, "a", 0, 2, 5);
+        assertChain(matcher, "b", 1, 4);
+        assertChain(matcher, "c", 3);
+        assertEquals(-1, match(matcher, "d"));
+    }
+
+    @Test
+    public void uniqueKeyCountIgnoresDuplicates() {
+        // The parser stops scanning once it has seen this many distinct keys
+        assertEquals(3, compile("a", "b", "a", "c", "b", "a").getUniqueKeyCount());
+        assertEquals(1, compile("a", "a", "a").getUniqueKeyCount());
+        assertEquals(3, compile("a", "b", "c").getUniqueKeyCount());
+    }
+
+    @Test
+    public void recompilingRebuildsTheChains() {
+        final KeyMatcher matcher = compile("a", "b", "a");
+        matcher.compile(texts("b", "b", "a"));
+        assertChain(matcher, "b", 0, 1);
+        assertChain(matcher, "a", 2);
+        assertEquals(2, matcher.getUniqueKeyCount());
+    }
+
+    @Test
+    public void matchesAKeyInsideALargerBuffer() {
+        final KeyMatcher matcher = compile("key", "other");
+        final byte[] bytes = "x=1&key=2".getBytes(UTF_8);
+        assertEquals(0, matcher.match(bytes, 4, 3));
+        assertEquals(-1, matcher.match(bytes, 4, 2));
+    }
+
+    private static KeyMatcher compile(final String... names) {
+        final KeyMatcher matcher = new KeyMatcher(names.length);
+        matcher.compile(texts(names));
+        return matcher;
+    }
+
+    private static Text[] texts(final String... names) {
+        final Text[] texts = new Text[names.length];
+        for (int i = 0; i < names.length; i++) {
+            texts[i] = new Text(names[i]);
+        }
+        return texts;
+    }
+
+    private static int match(final KeyMatcher matcher, final String key) {
+        final byte[] bytes = key.getBytes(UTF_8);
+        return matcher.match(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Asserts that a key matches the first of the columns, and that the chain visits the rest in order.
+     */
+    private static void assertChain(final KeyMatcher matcher, final String key, final int... columns) {
+        int column = match(matcher, key);
+        for (final int expected : columns) {
+            assertEquals(expected, column);
+            column = matcher.getNextDuplicate(column);
+        }
+        assertEquals(-1, column);
+    }
+}
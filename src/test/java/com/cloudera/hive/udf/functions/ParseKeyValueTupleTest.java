@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.Collector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.Text;
+import org.junit.Test;
+
+/**
+ * Checks that parse_key_val_tuple fills every return column of a duplicated key name, and that it stops
+ * scanning once it has seen every distinct key name.
+ */
+public class ParseKeyValueTupleTest {
+
+    private static final ObjectInspector STRING_OI = PrimitiveObjectInspectorFactory.writableStringObjectInspector;
+
+    @Test
+    public void fillsEveryColumnOfADuplicatedKey() throws HiveException {
+        assertRow(parse("a=1&b=2&c=3", "a", "b", "a", "c", "a"), "1", "2", "1", "3", "1");
+    }
+
+    @Test
+    public void stopsOnceEveryDistinctKeyHasBeenSeen() throws HiveException {
+        // With a and b both seen the scan stops, so the later a=3 must not replace a=1 in either column
+        assertRow(parse("a=1&b=2&a=3", "a", "b", "a"), "1", "2", "1");
+    }
+
+    @Test
+    public void keepsScanningUntilTheLastDistinctKey() throws HiveException {
+        // A repeated key does not count towards the distinct keys, so the scan reaches b, and a takes its last value
+        assertRow(parse("a=1&a=3&b=2", "a", "b", "a"), "3", "2", "3");
+    }
+
+    @Test
+    public void leavesMissingKeysNull() throws HiveException {
+        assertRow(parse("a=1", "a", "b", "a"), "1", null, "1");
+    }
+
+    /**
+     * Runs the UDTF over one input string, with the delimiters and key names as column arguments.
+     *
+     * @return the forwarded row
+     */
+    private static Object[] parse(final String input, final String... keyNames) throws HiveException {
+        final ObjectInspector[] ois = new ObjectInspector[keyNames.length + 3];
+        final Object[] args = new Object[keyNames.length + 3];
+        for (int i = 0; i < ois.length; i++) {
+            ois[i] = STRING_OI;
+        }
+        args[0] = new Text(input);
+        args[1] = new Text("&");
+        args[2] = new Text("=");
+        for (int i = 0; i < keyNames.length; i++) {
+            args[i + 3] = new Text(keyNames[i]);
+        }
+        final List<Object> rows = new ArrayList<Object>();
+        final ParseKeyValueTuple udtf = new ParseKeyValueTuple();
+        udtf.initialize(ois);
+        udtf.setCollector(new Collector() {
+            @Override
+            public void collect(final Object row) {
+                rows.add(row);
+            }
+        });
+        udtf.process(args);
+        assertEquals(1, rows.size());
+        return (Object[]) rows.get(0);
+    }
+
+    private static void assertRow(final Object[] row, final String... expected) {
+        assertEquals(expected.length, row.length);
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] == null) {
+                assertNull(row[i]);
+            } else {
+                assertEquals(expected[i], row[i].toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF;
+import org.apache.hadoop.hive.ql.udf.generic.GenericUDF.DeferredObject;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory;
+import org.apache.hadoop.io.LongWritable;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * Checks that row_number(), rank() and dense_rank() return the same LongWritable for every row, and that they
+ * create no objects per row once they have warmed up.
+ */
+public class RankingWritableTest {
+
+	private static final ObjectInspector LONG_OI = PrimitiveObjectInspectorFactory.writableLongObjectInspector;
+
+	// Rows of (value, partition), sorted by partition then value
+	private static final long[][] ROWS = {
+		{10, 1}, {10, 1}, {20, 1}, {30, 1}, {30, 1},
+		{10, 2},
+		{20, 3}, {20, 3}, {40, 3},
+	};
+
+	/**
+	 * A DeferredObject whose value can be changed without creating a new one.
+	 */
+	private static class Cell implements DeferredObject {
+		Object value;
+
+		@Override
+		public Object get() throws HiveException {
+			return value;
+		}
+	}
+
+	@Test
+	public void rowNumberReusesItsResult() throws HiveException {
+		// row_number() partitions by all of its arguments
+		check(new RowNumber(), new long[] {1, 2, 3, 4, 5, 1, 1, 2, 3}, 1);
+	}
+
+	@Test
+	public void rankReusesItsResult() throws HiveException {
+		check(new Rank(), new long[] {1, 1, 3, 4, 4, 1, 1, 1, 3}, 0);
+	}
+
+	@Test
+	public void denseRankReusesItsResult() throws HiveException {
+		check(new DenseRank(), new long[] {1, 1, 2, 3, 3, 1, 1, 1, 2}, 0);
+	}
+
+	@Test
+	public void rowNumberCreatesNothingPerRow() throws HiveException {
+		checkAllocation(new RowNumber(), 1);
+	}
+
+	@Test
+	public void rankCreatesNothingPerRow() throws HiveException {
+		checkAllocation(new Rank(), 0);
+	}
+
+	@Test
+	public void denseRankCreatesNothingPerRow() throws HiveException {
+		checkAllocation(new DenseRank(), 0);
+	}
+
+	/**
+	 * Evaluates the UDF over {@link #ROWS}, passing the columns from the first given one.
+	 */
+	private static void check(GenericUDF udf, long[] expected, int firstColumn) throws HiveException {
+		Cell[] cells = initialize(udf, firstColumn);
+		Object first = null;
+		for (int row = 0; row < ROWS.length; row++) {
+			for (int column = 0; column < cells.length; column++) {
+				cells[column].value = new LongWritable(ROWS[row][firstColumn + column]);
+			}
+			Object result = udf.evaluate(cells);
+			if (first == null) {
+				first = result;
+			}
+			assertSame("row " + row, first, result);
+			assertEquals("row " + row, expected[row], ((LongWritable) result).get());
+		}
+	}
+
+	/**
+	 * Evaluates the UDF over many rows, with the value changing every third row and the partition every hundredth,
+	 * and checks that the rows after the warm up allocate less than a byte each.
+	 */
+	private static void checkAllocation(GenericUDF udf, int firstColumn) throws HiveException {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		Cell[] cells = initialize(udf, firstColumn);
+		LongWritable[] values = new LongWritable[1000];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = new LongWritable(i);
+		}
+		int rows = 100000;
+		drive(udf, cells, values, rows);	// Warm up, so that the JIT and any lazily grown buffers have settled
+		long thread = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(thread);
+		drive(udf, cells, values, rows);
+		long allocated = threads.getThreadAllocatedBytes(thread) - before;
+		assertTrue(allocated + " bytes were allocated for " + rows + " rows", allocated < rows);
+	}
+
+	private static void drive(GenericUDF udf, Cell[] cells, LongWritable[] values, int rows) throws HiveException {
+		for (int row = 0; row < rows; row++) {
+			LongWritable value = values[(row / 3) % values.length];
+			LongWritable partition = values[(row / 100) % values.length];
+			cells[0].value = cells.length > 1 ? value : partition;
+			if (cells.length > 1) {
+				cells[1].value = partition;
+			}
+			udf.evaluate(cells);
+		}
+	}
+
+	/**
+	 * Initializes the UDF with bigint arguments: the value and the partition, or only the partition.
+	 */
+	private static Cell[] initialize(GenericUDF udf, int firstColumn) throws HiveException {
+		int width = 2 - firstColumn;
+		ObjectInspector[] ois = new ObjectInspector[width];
+		Cell[] cells = new Cell[width];
+		for (int column = 0; column < width; column++) {
+			ois[column] = LONG_OI;
+			cells[column] = new Cell();
+		}
+		udf.initialize(ois);
+		return cells;
+	}
+
+}
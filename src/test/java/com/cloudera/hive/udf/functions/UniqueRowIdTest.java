@@ -0,0 +1,102 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.cloudera.hive.udf.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.hive.ql.metadata.HiveException;
+import org.junit.Test;
+
+/**
+ * Checks how unique_row_id() numbers the JVM it runs in, from the MR1 task attempt id or the YARN container id.
+ */
+public class UniqueRowIdTest {
+
+	private static final Map<String, String> NO_CONTAINER = Collections.emptyMap();
+
+	@Test
+	public void mapAndReduceAttemptsGetDifferentNumbers() throws HiveException {
+		assertEquals((3 * 2) * 8, UniqueRowId.jvmNumber("attempt_201210101010_0001_m_000003_0", NO_CONTAINER));
+		assertEquals((3 * 2 + 1) * 8, UniqueRowId.jvmNumber("attempt_201210101010_0001_r_000003_0", NO_CONTAINER));
+	}
+
+	@Test
+	public void retriedAttemptsGetDifferentNumbers() throws HiveException {
+		int first = UniqueRowId.jvmNumber("attempt_201210101010_0001_m_000003_0", NO_CONTAINER);
+		int speculative = UniqueRowId.jvmNumber("attempt_201210101010_0001_m_000003_1", NO_CONTAINER);
+		assertEquals(first + 1, speculative);
+		assertTrue(speculative < UniqueRowId.jvmNumber("attempt_201210101010_0001_m_000004_0", NO_CONTAINER));
+	}
+
+	@Test
+	public void attemptIdTakesPrecedenceOverContainer() throws HiveException {
+		assertEquals(16, UniqueRowId.jvmNumber("attempt_201210101010_0001_m_000001_0", container("container_1350000000000_0001_01_000005")));
+	}
+
+	@Test
+	public void containersIncludeTheApplicationAttempt() throws HiveException {
+		assertEquals((1 << 20) + 5, UniqueRowId.jvmNumber(null, container("container_1350000000000_0001_01_000005")));
+		assertEquals((2 << 20) + 5, UniqueRowId.jvmNumber(null, container("container_1350000000000_0001_02_000005")));
+		assertEquals((1 << 20) + 5, UniqueRowId.jvmNumber(null, container("container_e17_1350000000000_0001_01_000005")));
+	}
+
+	@Test
+	public void localModeFallsBackToZero() throws HiveException {
+		assertEquals(0, UniqueRowId.jvmNumber(null, NO_CONTAINER));
+	}
+
+	@Test
+	public void malformedIdsAreRejected() {
+		assertRejected("attempt_201210101010_0001_m_00000x_0", NO_CONTAINER);
+		assertRejected("attempt_201210101010_0001_m_000003", NO_CONTAINER);
+		assertRejected("attempt_201210101010_0001_s_000003_0", NO_CONTAINER);
+		assertRejected(null, container("container_1350000000000_0001_01_00000x"));
+		assertRejected(null, container("container_000005"));
+	}
+
+	@Test
+	public void idsTooLargeForTheNumberAreRejected() {
+		assertRejected("attempt_201210101010_0001_m_524288_0", NO_CONTAINER);
+		assertRejected("attempt_201210101010_0001_m_000003_8", NO_CONTAINER);
+		assertRejected(null, container("container_1350000000000_0001_08_000005"));
+		assertRejected(null, container("container_1350000000000_0001_01_1048576"));
+	}
+
+	private static Map<String, String> container(String id) {
+		Map<String, String> environment = new HashMap<String, String>();
+		environment.put(UniqueRowId.CONTAINER_ID_VARIABLE, id);
+		return environment;
+	}
+
+	private static void assertRejected(String taskAttemptId, Map<String, String> environment) {
+		try {
+			UniqueRowId.jvmNumber(taskAttemptId, environment);
+			fail("Expected " + (taskAttemptId != null ? taskAttemptId : environment) + " to be rejected");
+		} catch (HiveException e) {
+			// Expected
+		}
+	}
+
+}